@@ -19,6 +19,8 @@ package link.thingscloud.netty.remoting.api;
 
 import link.thingscloud.netty.remoting.api.command.RemotingCommand;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author zhouhailin
  * @since 0.5.0
@@ -28,5 +30,38 @@ public interface RemotingClient extends RemotingService {
 
     void invokeAsync(String address, RemotingCommand request, AsyncHandler asyncHandler, long timeoutMillis);
 
+    /**
+     * Bridges to {@link #invokeAsync(String, RemotingCommand, AsyncHandler, long)} by default.
+     *
+     * @since 0.8.0
+     */
+    default CompletableFuture<RemotingCommand> invokeAsync(String address, RemotingCommand request, long timeoutMillis) {
+        final CompletableFuture<RemotingCommand> future = new CompletableFuture<RemotingCommand>();
+        invokeAsync(address, request, new AsyncHandler() {
+            @Override
+            public void onFailure(RemotingCommand request, Throwable cause) {
+                future.completeExceptionally(cause);
+            }
+
+            @Override
+            public void onSuccess(RemotingCommand response) {
+                future.complete(response);
+            }
+        }, timeoutMillis);
+        return future;
+    }
+
+    /**
+     * The default ignores {@code completeOnIoThread} and completes where the async handler runs.
+     *
+     * @param completeOnIoThread complete the future on the IO thread instead of the async handler executor,
+     *                           continuations must then be cheap and non-blocking
+     * @since 0.8.0
+     */
+    default CompletableFuture<RemotingCommand> invokeAsync(String address, RemotingCommand request, long timeoutMillis,
+                                                           boolean completeOnIoThread) {
+        return invokeAsync(address, request, timeoutMillis);
+    }
+
     void invokeOneWay(String address, RemotingCommand request);
 }
@@ -20,6 +20,8 @@ package link.thingscloud.netty.remoting.api;
 import link.thingscloud.netty.remoting.api.channel.RemotingChannel;
 import link.thingscloud.netty.remoting.api.command.RemotingCommand;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author zhouhailin
  * @since 0.5.0
@@ -32,5 +34,39 @@ public interface RemotingServer extends RemotingService {
     void invokeAsync(RemotingChannel remotingChannel, RemotingCommand request, AsyncHandler asyncHandler,
                      long timeoutMillis);
 
+    /**
+     * Bridges to {@link #invokeAsync(RemotingChannel, RemotingCommand, AsyncHandler, long)} by default.
+     *
+     * @since 0.8.0
+     */
+    default CompletableFuture<RemotingCommand> invokeAsync(RemotingChannel remotingChannel, RemotingCommand request,
+                                                           long timeoutMillis) {
+        final CompletableFuture<RemotingCommand> future = new CompletableFuture<RemotingCommand>();
+        invokeAsync(remotingChannel, request, new AsyncHandler() {
+            @Override
+            public void onFailure(RemotingCommand request, Throwable cause) {
+                future.completeExceptionally(cause);
+            }
+
+            @Override
+            public void onSuccess(RemotingCommand response) {
+                future.complete(response);
+            }
+        }, timeoutMillis);
+        return future;
+    }
+
+    /**
+     * The default ignores {@code completeOnIoThread} and completes where the async handler runs.
+     *
+     * @param completeOnIoThread complete the future on the IO thread instead of the async handler executor,
+     *                           continuations must then be cheap and non-blocking
+     * @since 0.8.0
+     */
+    default CompletableFuture<RemotingCommand> invokeAsync(RemotingChannel remotingChannel, RemotingCommand request,
+                                                           long timeoutMillis, boolean completeOnIoThread) {
+        return invokeAsync(remotingChannel, request, timeoutMillis);
+    }
+
     void invokeOneWay(RemotingChannel remotingChannel, RemotingCommand request);
 }
@@ -18,6 +18,7 @@
 package link.thingscloud.netty.remoting.api.buffer;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 /**
  * @author zhouhailin
@@ -38,6 +39,18 @@ public interface RemotingBuffer {
 
     void writeLong(long id);
 
+    /**
+     * Encodes through a temporary byte array by default, implementations may write in place.
+     *
+     * @return the number of bytes written
+     * @since 0.8.0
+     */
+    default int writeCharSequence(CharSequence sequence, Charset charset) {
+        byte[] bytes = sequence.toString().getBytes(charset);
+        writeBytes(bytes);
+        return bytes.length;
+    }
+
     byte readByte();
 
     void readBytes(byte[] dst);
@@ -50,6 +63,17 @@ public interface RemotingBuffer {
 
     long readLong();
 
+    /**
+     * Decodes through a temporary byte array by default, implementations may read in place.
+     *
+     * @since 0.8.0
+     */
+    default CharSequence readCharSequence(int length, Charset charset) {
+        byte[] bytes = new byte[length];
+        readBytes(bytes);
+        return new String(bytes, charset);
+    }
+
     int readableBytes();
 
     int readerIndex();
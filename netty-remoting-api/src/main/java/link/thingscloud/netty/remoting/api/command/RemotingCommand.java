@@ -48,6 +48,26 @@ public interface RemotingCommand {
 
     void serializableType(SerializableType value);
 
+    /**
+     * The type id of the {@link Serializer} of the payload. {@link #serializableType()} is null when it is not one
+     * of the built-in types. Defaults to the id of {@link #serializableType()}, or -1 without one.
+     */
+    default int serializableTypeId() {
+        SerializableType type = serializableType();
+        return type == null ? -1 : type.typeId();
+    }
+
+    /**
+     * Only built-in type ids are accepted by default.
+     */
+    default void serializableTypeId(int typeId) {
+        SerializableType type = SerializableType.of(typeId);
+        if (type == null) {
+            throw new IllegalArgumentException("SerializableType id " + typeId + " is not supported");
+        }
+        serializableType(type);
+    }
+
     short opCode();
 
     void opCode(short value);
@@ -65,4 +85,51 @@ public interface RemotingCommand {
     byte[] payload();
 
     void payload(byte[] payload);
+
+    /**
+     * The payload as an object, serialized with {@link #serializableTypeId()} by the encoder straight into the
+     * outbound frame. Setting it replaces the byte payload, {@link #payload()} serializes it once and caches the
+     * bytes. Implementations without object payloads return null.
+     */
+    default Object payloadObject() {
+        return null;
+    }
+
+    default void payloadObject(Object payloadObject) {
+        throw new UnsupportedOperationException("payloadObject");
+    }
+
+    /**
+     * The payload deserialized with {@link #serializableTypeId()}. The result is cached on the command, so
+     * interceptors and the processor share one instance; it is dropped when the payload or its type is set again.
+     *
+     * @param classOfT the payload class
+     * @param <T>      the payload type
+     * @return the payload object, or null if there is no payload
+     * @throws UnsupportedOperationException by default, when the payload would have to be deserialized
+     */
+    default <T> T payloadAs(Class<T> classOfT) {
+        Object payloadObject = payloadObject();
+        if (classOfT.isInstance(payloadObject)) {
+            return classOfT.cast(payloadObject);
+        }
+        if (payloadObject == null && payload() == null) {
+            return null;
+        }
+        throw new UnsupportedOperationException("payloadAs");
+    }
+
+    /**
+     * Whether the payload is compressed on the wire. Set it to compress regardless of the configured threshold,
+     * it is set on received commands whose payload arrived compressed. Only protocol v2 connections compress.
+     */
+    default boolean compressed() {
+        return false;
+    }
+
+    /**
+     * Ignored by default, implementations that cannot compress send the payload as is.
+     */
+    default void compressed(boolean compressed) {
+    }
 }
\ No newline at end of file
@@ -26,7 +26,29 @@ public enum SerializableType {
     Kryo,
     Fury,
     Hessian,
-    Jdk;
+    Jdk,
+    /**
+     * fastjson2 binary JSON, much faster to parse than the text format.
+     */
+    JSONB;
+
+    /**
+     * Type ids are carried in one byte, ids past the built-in types belong to registered {@link Serializer}s.
+     */
+    public static final int MAX_TYPE_ID = 0xFF;
+
+    private static final SerializableType[] VALUES = values();
+
+    public int typeId() {
+        return ordinal();
+    }
+
+    /**
+     * @return the built-in type of the id, or null for the id of another {@link Serializer}
+     */
+    public static SerializableType of(int typeId) {
+        return typeId >= 0 && typeId < VALUES.length ? VALUES[typeId] : null;
+    }
 
     public static SerializableType parse(int index) {
         switch (index) {
@@ -40,6 +62,8 @@ public enum SerializableType {
                 return Hessian;
             case 4:
                 return Jdk;
+            case 5:
+                return JSONB;
             default:
                 throw new IllegalArgumentException("SerializableType " + index + " is not supported");
         }
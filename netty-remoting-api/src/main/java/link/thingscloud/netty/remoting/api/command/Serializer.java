@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.remoting.api.command;
+
+/**
+ * Serializes payload objects for one type id, the byte carried in the SerializableType field of a frame. Ids 0 to 5
+ * belong to the built-in {@link SerializableType}s, further serializers are found with
+ * {@link java.util.ServiceLoader} and may also take over a built-in id.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public interface Serializer {
+
+    /**
+     * @return the type id, from 0 to {@link SerializableType#MAX_TYPE_ID}
+     */
+    int typeId();
+
+    byte[] serialize(Object obj);
+
+    <T> T deserialize(byte[] data, Class<T> classOfT);
+}
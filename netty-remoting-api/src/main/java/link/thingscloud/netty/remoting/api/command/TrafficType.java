@@ -25,7 +25,13 @@ public enum TrafficType {
     REQUEST_SYNC,
     REQUEST_ASYNC,
     REQUEST_ONEWAY,
-    RESPONSE;
+    RESPONSE,
+    /**
+     * A container whose payload packs complete frames of other commands, the decoder expands it.
+     *
+     * @since 0.8.0
+     */
+    BATCH;
 
     public static TrafficType parse(int index) {
         switch (index) {
@@ -37,6 +43,8 @@ public enum TrafficType {
                 return REQUEST_ONEWAY;
             case 3:
                 return RESPONSE;
+            case 4:
+                return BATCH;
             default:
                 throw new IllegalArgumentException("TrafficType " + index + " is not supported");
         }
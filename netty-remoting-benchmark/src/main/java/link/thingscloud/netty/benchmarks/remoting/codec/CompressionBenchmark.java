@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.benchmarks.remoting.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import link.thingscloud.netty.benchmarks.remoting.AbstractBenchmark;
+import link.thingscloud.netty.remoting.api.command.RemotingCommand;
+import link.thingscloud.netty.remoting.config.RemotingClientConfig;
+import link.thingscloud.netty.remoting.impl.command.CodecHelper;
+import link.thingscloud.netty.remoting.impl.command.RemotingCommandFactoryImpl;
+import link.thingscloud.netty.remoting.impl.netty.handler.Decoder;
+import link.thingscloud.netty.remoting.impl.netty.handler.Encoder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes a JSON-like payload over protocol v2 with and without deflate at each
+ * {@link AbstractBenchmark.MessageSize}. The wire bytes are reported as a rate next to the throughput, their ratio
+ * is the frame size.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE", "JUMBO"})
+    private AbstractBenchmark.MessageSize messageSize;
+
+    @Param({"1", "6"})
+    private int compressionLevel;
+
+    private RemotingCommand command;
+    private EmbeddedChannel plainChannel;
+    private EmbeddedChannel deflateChannel;
+
+    /**
+     * Bytes written to the wire.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class WireBytes {
+        public long wireBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            wireBytes = 0;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CompressionBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StringBuilder json = new StringBuilder(messageSize.bytes() + 64);
+        for (int i = 0; json.length() < messageSize.bytes(); i++) {
+            json.append("{\"id\":").append(i).append(",\"name\":\"device-").append(i % 97)
+                    .append("\",\"online\":").append(i % 3 == 0).append("},");
+        }
+        json.setLength(messageSize.bytes());
+
+        command = new RemotingCommandFactoryImpl().createRequest();
+        command.cmdCode((short) 1);
+        command.cmdVersion((short) 1);
+        command.remark("benchmark");
+        command.property("key", "value");
+        command.payload(json.toString().getBytes(StandardCharsets.UTF_8));
+
+        RemotingClientConfig plainConfig = new RemotingClientConfig();
+        plainConfig.setProtocolVersion(CodecHelper.PROTOCOL_VERSION_2);
+        plainChannel = new EmbeddedChannel(new Encoder(plainConfig), new Decoder());
+
+        RemotingClientConfig deflateConfig = new RemotingClientConfig();
+        deflateConfig.setProtocolVersion(CodecHelper.PROTOCOL_VERSION_2);
+        deflateConfig.setCompressionThreshold(1);
+        deflateConfig.setCompressionLevel(compressionLevel);
+        deflateChannel = new EmbeddedChannel(new Encoder(deflateConfig), new Decoder());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        plainChannel.finishAndReleaseAll();
+        deflateChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object uncompressed(WireBytes counter) {
+        return roundTrip(plainChannel, counter);
+    }
+
+    @Benchmark
+    public Object deflate(WireBytes counter) {
+        return roundTrip(deflateChannel, counter);
+    }
+
+    private Object roundTrip(EmbeddedChannel channel, WireBytes counter) {
+        channel.writeOutbound(command);
+        ByteBuf frame = channel.readOutbound();
+        counter.wireBytes += frame.readableBytes();
+        channel.writeInbound(frame);
+        return channel.readInbound();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.benchmarks.remoting.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import link.thingscloud.netty.benchmarks.remoting.AbstractBenchmark;
+import link.thingscloud.netty.remoting.api.command.RemotingCommand;
+import link.thingscloud.netty.remoting.impl.command.RemotingCommandFactoryImpl;
+import link.thingscloud.netty.remoting.impl.netty.handler.Encoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the legacy growing-buffer encoder with the exact-size {@link Encoder} at each
+ * {@link AbstractBenchmark.MessageSize}.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncoderBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE", "JUMBO"})
+    private AbstractBenchmark.MessageSize messageSize;
+
+    private RemotingCommand command;
+    private EmbeddedChannel legacyChannel;
+    private EmbeddedChannel exactSizeChannel;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EncoderBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        byte[] payload = new byte[messageSize.bytes()];
+        ThreadLocalRandom.current().nextBytes(payload);
+
+        command = new RemotingCommandFactoryImpl().createRequest();
+        command.cmdCode((short) 1);
+        command.cmdVersion((short) 1);
+        command.remark("benchmark");
+        command.property("key", "value");
+        command.payload(payload);
+
+        legacyChannel = new EmbeddedChannel(new LegacyEncoder());
+        exactSizeChannel = new EmbeddedChannel(new Encoder());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        legacyChannel.finishAndReleaseAll();
+        exactSizeChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int legacy() {
+        return encode(legacyChannel);
+    }
+
+    @Benchmark
+    public int exactSize() {
+        return encode(exactSizeChannel);
+    }
+
+    private int encode(EmbeddedChannel channel) {
+        channel.writeOutbound(command);
+        ByteBuf frame = channel.readOutbound();
+        int length = frame.readableBytes();
+        frame.release();
+        return length;
+    }
+}
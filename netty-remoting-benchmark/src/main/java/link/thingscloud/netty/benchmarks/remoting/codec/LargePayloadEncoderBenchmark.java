@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package link.thingscloud.netty.benchmarks.remoting.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import link.thingscloud.netty.remoting.api.command.RemotingCommand;
+import link.thingscloud.netty.remoting.impl.command.RemotingCommandFactoryImpl;
+import link.thingscloud.netty.remoting.impl.netty.handler.Encoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands multi-MB frames to the transport the way the NIO and epoll channels do, which copy any frame that is not
+ * entirely direct into a direct buffer before writing it. Compares the single direct frame of the {@link Encoder}
+ * with a composite frame of a direct header and the wrapped heap payload, and with one whose payload is copied into
+ * a pooled direct component.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LargePayloadEncoderBenchmark {
+
+    @Param({"1048576", "4194304", "16777216"})
+    private int payloadBytes;
+
+    private final ByteBufAllocator alloc = ByteBufAllocator.DEFAULT;
+    private RemotingCommand command;
+    private byte[] payload;
+    private int headerLength;
+    private EmbeddedChannel channel;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LargePayloadEncoderBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        payload = new byte[payloadBytes];
+        ThreadLocalRandom.current().nextBytes(payload);
+
+        command = new RemotingCommandFactoryImpl().createRequest();
+        command.cmdCode((short) 1);
+        command.remark("benchmark");
+        command.property("key", "value");
+        command.payload(payload);
+
+        channel = new EmbeddedChannel(new Encoder());
+        channel.writeOutbound(command);
+        ByteBuf frame = channel.readOutbound();
+        headerLength = frame.readableBytes() - payloadBytes;
+        frame.release();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int singleBuffer() {
+        channel.writeOutbound(command);
+        return write((ByteBuf) channel.readOutbound());
+    }
+
+    @Benchmark
+    public int compositeHeapPayload() {
+        CompositeByteBuf frame = alloc.compositeBuffer(2);
+        frame.addComponents(true, header(), Unpooled.wrappedBuffer(payload));
+        return write(frame);
+    }
+
+    @Benchmark
+    public int compositeDirectPayload() {
+        CompositeByteBuf frame = alloc.compositeBuffer(2);
+        frame.addComponents(true, header(), alloc.ioBuffer(payloadBytes).writeBytes(payload));
+        return write(frame);
+    }
+
+    private ByteBuf header() {
+        return alloc.ioBuffer(headerLength).writeZero(headerLength);
+    }
+
+    private int write(ByteBuf frame) {
+        if (!frame.isDirect()) {
+            // What AbstractNioByteChannel.filterOutboundMessage does with a heap or mixed frame
+            ByteBuf direct = alloc.directBuffer(frame.readableBytes());
+            direct.writeBytes(frame, frame.readerIndex(), frame.readableBytes());
+            frame.release();
+            frame = direct;
+        }
+        int length = frame.readableBytes();
+        frame.release();
+        return length;
+    }
+}
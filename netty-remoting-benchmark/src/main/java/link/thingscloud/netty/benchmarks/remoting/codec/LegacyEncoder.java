@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.benchmarks.remoting.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import link.thingscloud.netty.remoting.api.command.RemotingCommand;
+import link.thingscloud.netty.remoting.impl.buffer.NettyRemotingBuffer;
+import link.thingscloud.netty.remoting.impl.command.CodecHelper;
+
+/**
+ * The encoder before exact-size allocation, kept as the benchmark baseline: the default sized buffer grows while
+ * the frame is written.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public class LegacyEncoder extends MessageToByteEncoder<RemotingCommand> {
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, RemotingCommand remotingCommand, ByteBuf out) {
+        CodecHelper.encodeCommand(remotingCommand, new NettyRemotingBuffer(out));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.benchmarks.remoting.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import link.thingscloud.netty.remoting.api.command.RemotingCommand;
+import link.thingscloud.netty.remoting.api.command.TrafficType;
+import link.thingscloud.netty.remoting.impl.command.RemotingCommandFactoryImpl;
+import link.thingscloud.netty.remoting.impl.netty.handler.Decoder;
+import link.thingscloud.netty.remoting.impl.netty.handler.Encoder;
+import link.thingscloud.netty.remoting.impl.netty.handler.OnewayBatchHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends small oneway commands one frame each and in batch frames, and decodes them on the other side. Every
+ * frame is one write to the socket in a real connection, the batches cut those writes as well.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OnewayBatchBenchmark {
+    private static final int COMMANDS = 1000;
+
+    @Param({"16", "256"})
+    private int payloadSize;
+
+    @Param({"16384"})
+    private int batchMaxBytes;
+
+    private RemotingCommand command;
+    private EmbeddedChannel frameChannel;
+    private EmbeddedChannel batchChannel;
+    private EmbeddedChannel serverChannel;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OnewayBatchBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        byte[] payload = new byte[payloadSize];
+        ThreadLocalRandom.current().nextBytes(payload);
+
+        command = new RemotingCommandFactoryImpl().createRequest();
+        command.cmdCode((short) 1);
+        command.trafficType(TrafficType.REQUEST_ONEWAY);
+        command.payload(payload);
+
+        frameChannel = new EmbeddedChannel(new Encoder());
+        // Batches are sent by size only, the delay never passes
+        batchChannel = new EmbeddedChannel(new Encoder(), new OnewayBatchHandler(TimeUnit.HOURS.toMicros(1), batchMaxBytes));
+        serverChannel = new EmbeddedChannel(new Decoder());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        frameChannel.finishAndReleaseAll();
+        batchChannel.finishAndReleaseAll();
+        serverChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public int frames() {
+        return send(frameChannel);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public int batches() {
+        return send(batchChannel);
+    }
+
+    private int send(EmbeddedChannel channel) {
+        for (int i = 0; i < COMMANDS; i++) {
+            channel.writeOutbound(command);
+        }
+
+        int received = 0;
+        ByteBuf frame;
+        while ((frame = channel.readOutbound()) != null) {
+            serverChannel.writeInbound(frame);
+            while (serverChannel.readInbound() != null) {
+                received++;
+            }
+        }
+        return received;
+    }
+}
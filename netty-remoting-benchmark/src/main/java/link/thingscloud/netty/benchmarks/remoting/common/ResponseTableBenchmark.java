@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.benchmarks.remoting.common;
+
+import link.thingscloud.netty.remoting.common.ResponseFuture;
+import link.thingscloud.netty.remoting.common.ResponseTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The in-flight request table under the put, remove once and timeout scan mix of the remoting service. Requests are
+ * put and removed by 15 threads while one thread scans, with {@code inFlight} requests pending all along.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseTableBenchmark {
+    private static final int WINDOW = 1024;
+
+    @Param({"ConcurrentHashMap", "ResponseTable"})
+    private String table;
+
+    @Param({"200000"})
+    private int inFlight;
+
+    private Table responseTable;
+    private ResponseFuture future;
+    private final AtomicInteger requestIds = new AtomicInteger();
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ResponseTableBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        responseTable = "ResponseTable".equals(table) ? new ResponseTableAdapter() : new ConcurrentHashMapAdapter();
+        future = new ResponseFuture(0, TimeUnit.HOURS.toMillis(1));
+        // Pending requests which do not time out, each scan walks over them
+        for (int i = 0; i < inFlight; i++) {
+            responseTable.put(requestIds.incrementAndGet(), future);
+        }
+    }
+
+    /**
+     * Request ids put by one thread, each one is removed {@link #WINDOW} puts later.
+     */
+    @State(Scope.Thread)
+    public static class Window {
+        private final int[] requestIds = new int[WINDOW];
+        private int next;
+    }
+
+    @Benchmark
+    @Group("mix")
+    @GroupThreads(15)
+    public ResponseFuture putRemove(Window window) {
+        // Ids come from one counter, as from the request id generator
+        int requestId = requestIds.incrementAndGet();
+        int slot = window.next++ & (WINDOW - 1);
+        int oldest = window.requestIds[slot];
+        window.requestIds[slot] = requestId;
+        responseTable.put(requestId, future);
+        return responseTable.remove(oldest);
+    }
+
+    @Benchmark
+    @Group("mix")
+    @GroupThreads(1)
+    public int scan() {
+        return responseTable.removeExpired(System.currentTimeMillis());
+    }
+
+    private interface Table {
+        void put(int requestId, ResponseFuture responseFuture);
+
+        ResponseFuture remove(int requestId);
+
+        int removeExpired(long now);
+    }
+
+    private static final class ResponseTableAdapter implements Table {
+        private final ResponseTable table = new ResponseTable();
+
+        @Override
+        public void put(int requestId, ResponseFuture responseFuture) {
+            table.put(requestId, responseFuture);
+        }
+
+        @Override
+        public ResponseFuture remove(int requestId) {
+            return table.remove(requestId);
+        }
+
+        @Override
+        public int removeExpired(long now) {
+            return table.removeExpired(now).size();
+        }
+    }
+
+    /**
+     * The table and the scan the remoting service used before.
+     */
+    private static final class ConcurrentHashMapAdapter implements Table {
+        private final Map<Integer, ResponseFuture> table = new ConcurrentHashMap<>(256);
+
+        @Override
+        public void put(int requestId, ResponseFuture responseFuture) {
+            table.put(requestId, responseFuture);
+        }
+
+        @Override
+        public ResponseFuture remove(int requestId) {
+            return table.remove(requestId);
+        }
+
+        @Override
+        public int removeExpired(long now) {
+            List<Integer> expired = new ArrayList<>();
+            for (Map.Entry<Integer, ResponseFuture> next : table.entrySet()) {
+                ResponseFuture responseFuture = next.getValue();
+                if (responseFuture.getBeginTimestamp() + responseFuture.getTimeoutMillis() <= now) {
+                    expired.add(next.getKey());
+                }
+            }
+            int removed = 0;
+            for (Integer requestId : expired) {
+                if (table.remove(requestId) != null) {
+                    removed++;
+                }
+            }
+            return removed;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.benchmarks.remoting.serialize;
+
+import link.thingscloud.netty.remoting.api.command.SerializableType;
+import link.thingscloud.netty.remoting.impl.command.SerializableHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the first Fury serialization of a payload class in a fresh JVM, with and without warming up the
+ * serializer at start on the serializing thread or on another one. Each fork is one sample, JMH reports the percentiles over the forks.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(30)
+public class FuryColdStartBenchmark {
+
+    /**
+     * Where the serializer is warmed up, every thread serializes with a Fury instance of its own.
+     */
+    @Param({"none", "sameThread", "otherThread"})
+    private String warmUp;
+
+    private Order order;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FuryColdStartBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        // Loads Fury itself either way, only the generated serializer of the class differs
+        SerializableHelper.serialize(SerializableType.Fury, "start");
+        SerializableHelper.register(Order.class);
+        if ("sameThread".equals(warmUp)) {
+            SerializableHelper.warmUp(Order.class);
+        } else if ("otherThread".equals(warmUp)) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SerializableHelper.warmUp(Order.class);
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        order = new Order();
+        order.id = 1L;
+        order.customer = "customer";
+        order.items = new ArrayList<>();
+        order.items.add("item");
+        order.amount = 100.0;
+    }
+
+    @Benchmark
+    public byte[] firstRequest() {
+        return SerializableHelper.serialize(SerializableType.Fury, order);
+    }
+
+    public static class Order {
+        private long id;
+        private String customer;
+        private List<String> items;
+        private double amount;
+    }
+}
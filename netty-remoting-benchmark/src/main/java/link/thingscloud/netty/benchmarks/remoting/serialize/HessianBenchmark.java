@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.benchmarks.remoting.serialize;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import link.thingscloud.netty.remoting.api.command.SerializableType;
+import link.thingscloud.netty.remoting.impl.command.SerializableHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hessian round trips of a small DTO through byte arrays and through a pooled buffer, as the codec does.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HessianBenchmark {
+
+    private Order order;
+    private byte[] data;
+    private ByteBuf buffer;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HessianBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        order = new Order();
+        order.id = 10086L;
+        order.customer = "thingscloud";
+        order.items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            order.items.add("SKU-" + i);
+        }
+        order.attributes = new HashMap<>();
+        order.attributes.put("channel", "app");
+        order.attributes.put("region", "cn-east");
+        data = SerializableHelper.serialize(SerializableType.Hessian, order);
+        buffer = PooledByteBufAllocator.DEFAULT.heapBuffer(1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        buffer.release();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return SerializableHelper.serialize(SerializableType.Hessian, order);
+    }
+
+    @Benchmark
+    public Order deserialize() {
+        return SerializableHelper.deserialize(SerializableType.Hessian, data, Order.class);
+    }
+
+    @Benchmark
+    public Order roundTripBuffer() {
+        buffer.clear();
+        SerializableHelper.serialize(SerializableType.Hessian, order, buffer);
+        return SerializableHelper.deserialize(SerializableType.Hessian, buffer, Order.class);
+    }
+
+    public static class Order implements java.io.Serializable {
+        public long id;
+        public String customer;
+        public List<String> items;
+        public Map<String, String> attributes;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.benchmarks.remoting.serialize;
+
+import link.thingscloud.netty.remoting.api.command.SerializableType;
+import link.thingscloud.netty.remoting.impl.command.SerializableHelper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares JSONB, with and without a symbol table of the field names, to text JSON, Kryo and Fury on a typical
+ * DTO. {@code payloadBytes} divided by the score of {@code serialize} is the serialized size.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonbBenchmark {
+    private static final String JSONB_SYMBOLS = "JSONB_SYMBOLS";
+
+    @Param({"JSON", "JSONB", JSONB_SYMBOLS, "Kryo", "Fury"})
+    private String format;
+
+    private SerializableType serializableType;
+    private Order order;
+    private byte[] data;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JsonbBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Kryo and Fury only find the classes of fields, not of collection elements
+        SerializableHelper.register(Item.class);
+        if (JSONB_SYMBOLS.equals(format)) {
+            serializableType = SerializableType.JSONB;
+            SerializableHelper.jsonbSymbols("id", "customer", "items", "sku", "quantity", "price", "attributes", "paid");
+        } else {
+            serializableType = SerializableType.valueOf(format);
+            SerializableHelper.jsonbSymbols();
+        }
+
+        order = new Order();
+        order.id = 10086L;
+        order.customer = "thingscloud";
+        order.items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Item item = new Item();
+            item.sku = "SKU-" + i;
+            item.quantity = i + 1;
+            item.price = 9.99 * (i + 1);
+            order.items.add(item);
+        }
+        order.attributes = new HashMap<>();
+        order.attributes.put("channel", "app");
+        order.attributes.put("region", "cn-east");
+        order.paid = true;
+        data = SerializableHelper.serialize(serializableType, order);
+    }
+
+    /**
+     * Bytes serialized.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class PayloadBytes {
+        public long payloadBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            payloadBytes = 0;
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize(PayloadBytes counter) {
+        byte[] bytes = SerializableHelper.serialize(serializableType, order);
+        counter.payloadBytes += bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Order deserialize() {
+        return SerializableHelper.deserialize(serializableType, data, Order.class);
+    }
+
+    public static class Order implements java.io.Serializable {
+        public long id;
+        public String customer;
+        public List<Item> items;
+        public Map<String, String> attributes;
+        public boolean paid;
+    }
+
+    public static class Item implements java.io.Serializable {
+        public String sku;
+        public int quantity;
+        public double price;
+    }
+}
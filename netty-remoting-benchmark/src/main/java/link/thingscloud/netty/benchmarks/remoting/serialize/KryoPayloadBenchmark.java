@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.benchmarks.remoting.serialize;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import link.thingscloud.netty.remoting.impl.command.CodecHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the pooled {@link CodecHelper#encodePayload(Object, Class[])} and
+ * {@link CodecHelper#decodePayload(byte[], Class, Class[])} to building and registering a new Kryo on every call.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KryoPayloadBenchmark {
+
+    @Param({"16", "4096"})
+    private int nameLength;
+
+    private Person person;
+    private byte[] data;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(KryoPayloadBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StringBuilder name = new StringBuilder(nameLength);
+        for (int i = 0; i < nameLength; i++) {
+            name.append((char) ('a' + i % 26));
+        }
+        person = new Person();
+        person.name = name.toString();
+        person.age = 10;
+        person.cat = new Cat();
+        person.cat.name = "cat";
+        person.cat.age = 1;
+        data = CodecHelper.encodePayload(person, Cat.class);
+    }
+
+    @Benchmark
+    public byte[] encodePooled() {
+        return CodecHelper.encodePayload(person, Cat.class);
+    }
+
+    @Benchmark
+    public byte[] encodePerCall() {
+        Kryo kryo = new Kryo();
+        kryo.register(Person.class);
+        kryo.register(Cat.class);
+        Output output = new Output(1024, -1);
+        kryo.writeObject(output, person);
+        return output.toBytes();
+    }
+
+    @Benchmark
+    public Person decodePooled() {
+        return CodecHelper.decodePayload(data, Person.class, Cat.class);
+    }
+
+    @Benchmark
+    public Person decodePerCall() {
+        Kryo kryo = new Kryo();
+        kryo.register(Person.class);
+        kryo.register(Cat.class);
+        return kryo.readObject(new Input(data), Person.class);
+    }
+
+    public static class Person {
+        private String name;
+        private int age;
+        private Cat cat;
+    }
+
+    public static class Cat {
+        private String name;
+        private int age;
+    }
+}
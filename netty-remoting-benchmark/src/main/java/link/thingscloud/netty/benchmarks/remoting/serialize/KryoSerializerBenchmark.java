@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.benchmarks.remoting.serialize;
+
+import link.thingscloud.netty.remoting.api.command.SerializableType;
+import link.thingscloud.netty.remoting.impl.command.SerializableHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips an object through the pooled Kryo serializer from many threads at once. {@link #main(String[])}
+ * runs it with 8, 32 and 128 threads.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class KryoSerializerBenchmark {
+
+    @Param({"16", "4096"})
+    private int textLength;
+
+    private Message message;
+    private byte[] data;
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{8, 32, 128}) {
+            new Runner(new OptionsBuilder().include(KryoSerializerBenchmark.class.getSimpleName()).threads(threads).build()).run();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StringBuilder text = new StringBuilder(textLength);
+        for (int i = 0; i < textLength; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        message = new Message();
+        message.id = 1L;
+        message.text = text.toString();
+        message.tags = new ArrayList<>();
+        message.tags.add("tag");
+        message.attributes = new HashMap<>();
+        message.attributes.put("key", "value");
+        data = SerializableHelper.serialize(SerializableType.Kryo, message);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return SerializableHelper.serialize(SerializableType.Kryo, message);
+    }
+
+    @Benchmark
+    public Message deserialize() {
+        return SerializableHelper.deserialize(SerializableType.Kryo, data, Message.class);
+    }
+
+    public static class Message {
+        private long id;
+        private String text;
+        private List<String> tags;
+        private Map<String, String> attributes;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.benchmarks.remoting.serialize;
+
+import link.thingscloud.netty.remoting.api.command.SerializableType;
+import link.thingscloud.netty.remoting.impl.command.SerializableHelper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialize and deserialize throughput of every {@link SerializableType} on a small, a nested and a
+ * collection-heavy DTO. {@code payloadBytes} divided by the score of {@code serialize} is the serialized size,
+ * {@link #main(String[])} runs the suite with 1, 4 and 16 threads and the gc profiler for the allocation per op.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"JSON", "JSONB", "Kryo", "Fury", "Hessian", "Jdk"})
+    private SerializableType serializableType;
+
+    @Param({"SMALL", "NESTED", "COLLECTION"})
+    private Shape shape;
+
+    private Object object;
+    private Class<?> objectClass;
+    private byte[] data;
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16}) {
+            new Runner(new OptionsBuilder().include(SerializationBenchmark.class.getSimpleName())
+                    .addProfiler(GCProfiler.class).threads(threads).build()).run();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Kryo and Fury only find the classes of fields, not of collection elements
+        SerializableHelper.register(Address.class);
+        SerializableHelper.register(Item.class);
+        SerializableHelper.warmUp(shape.objectClass);
+        SerializableHelper.jsonbSymbols();
+
+        object = shape.create();
+        objectClass = shape.objectClass;
+        data = SerializableHelper.serialize(serializableType, object);
+    }
+
+    /**
+     * Bytes serialized.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class PayloadBytes {
+        public long payloadBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            payloadBytes = 0;
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize(PayloadBytes counter) {
+        byte[] bytes = SerializableHelper.serialize(serializableType, object);
+        counter.payloadBytes += bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return SerializableHelper.deserialize(serializableType, data, objectClass);
+    }
+
+    public enum Shape {
+        /**
+         * A handful of scalar fields.
+         */
+        SMALL(Small.class) {
+            @Override
+            Object create() {
+                return small(1);
+            }
+        },
+        /**
+         * Objects three levels deep.
+         */
+        NESTED(Nested.class) {
+            @Override
+            Object create() {
+                Nested nested = new Nested();
+                nested.id = 10086L;
+                nested.owner = small(2);
+                nested.address = address();
+                nested.child = new Nested();
+                nested.child.id = 10087L;
+                nested.child.owner = small(3);
+                nested.child.address = address();
+                return nested;
+            }
+        },
+        /**
+         * Lists and maps of a few hundred entries.
+         */
+        COLLECTION(Collections.class) {
+            @Override
+            Object create() {
+                Collections collections = new Collections();
+                collections.ids = new ArrayList<>();
+                collections.items = new ArrayList<>();
+                collections.attributes = new HashMap<>();
+                for (int i = 0; i < 128; i++) {
+                    collections.ids.add((long) i);
+                    Item item = new Item();
+                    item.sku = "SKU-" + i;
+                    item.quantity = i + 1;
+                    item.price = 9.99 * (i + 1);
+                    collections.items.add(item);
+                    collections.attributes.put("key" + i, "value" + i);
+                }
+                return collections;
+            }
+        };
+
+        private final Class<?> objectClass;
+
+        Shape(Class<?> objectClass) {
+            this.objectClass = objectClass;
+        }
+
+        abstract Object create();
+
+        private static Small small(int id) {
+            Small small = new Small();
+            small.id = id;
+            small.name = "thingscloud";
+            small.score = 99.5;
+            small.active = true;
+            return small;
+        }
+
+        private static Address address() {
+            Address address = new Address();
+            address.city = "Hangzhou";
+            address.street = "Wenyi Road";
+            address.zip = 310000;
+            return address;
+        }
+    }
+
+    public static class Small implements Serializable {
+        public int id;
+        public String name;
+        public double score;
+        public boolean active;
+    }
+
+    public static class Address implements Serializable {
+        public String city;
+        public String street;
+        public int zip;
+    }
+
+    public static class Nested implements Serializable {
+        public long id;
+        public Small owner;
+        public Address address;
+        public Nested child;
+    }
+
+    public static class Collections implements Serializable {
+        public List<Long> ids;
+        public List<Item> items;
+        public Map<String, String> attributes;
+    }
+
+    public static class Item implements Serializable {
+        public String sku;
+        public int quantity;
+        public double price;
+    }
+}
@@ -17,6 +17,8 @@
 
 package link.thingscloud.netty.remoting.common;
 
+import io.netty.channel.Channel;
+import io.netty.util.Timeout;
 import link.thingscloud.netty.remoting.api.AsyncHandler;
 import link.thingscloud.netty.remoting.api.command.RemotingCommand;
 import link.thingscloud.netty.remoting.api.exception.RemotingRuntimeException;
@@ -54,6 +56,14 @@ public class ResponseFuture {
     @ToStringExclude
     private SemaphoreReleaseOnlyOnce once;
 
+    @ToStringExclude
+    private volatile Timeout timeout;
+
+    @ToStringExclude
+    private volatile Channel channel;
+
+    private boolean completeOnIoThread;
+
     private RemotingCommand requestCommand;
     private String remoteAddr;
 
@@ -83,6 +93,42 @@ public class ResponseFuture {
         }
     }
 
+    /**
+     * Cancels the scheduled timeout, if any, once the request has completed.
+     */
+    public void cancelTimeout() {
+        Timeout timeout = this.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    public void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return the channel the request was sent on
+     */
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public void setChannel(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @return true if the async handler should run on the completing thread instead of the callback executor
+     */
+    public boolean isCompleteOnIoThread() {
+        return completeOnIoThread;
+    }
+
+    public void setCompleteOnIoThread(boolean completeOnIoThread) {
+        this.completeOnIoThread = completeOnIoThread;
+    }
+
     public void release() {
         if (this.once != null) {
             this.once.release();
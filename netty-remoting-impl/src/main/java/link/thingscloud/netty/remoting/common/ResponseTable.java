@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.remoting.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-flight requests by request id. Each id is put once and removed once, by its response, a failed send or the
+ * timeout scan. The table is split in stripes guarded by their own lock, each stripe is an open addressing table of
+ * primitive keys, so neither put nor remove boxes the id or allocates a node.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public class ResponseTable {
+    static final int INITIAL_STRIPE_CAPACITY = 16;
+    /**
+     * Enough stripes that the timeout scan only holds each lock over a small part of the table.
+     */
+    static final int MIN_STRIPES = 64;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public ResponseTable() {
+        this(Math.max(MIN_STRIPES, Runtime.getRuntime().availableProcessors() * 4));
+    }
+
+    /**
+     * @param concurrency the expected number of threads updating the table, rounded up to a power of two stripes
+     */
+    public ResponseTable(int concurrency) {
+        int stripeCount = 1;
+        while (stripeCount < concurrency && stripeCount < (1 << 16)) {
+            stripeCount <<= 1;
+        }
+        int stripeBits = Integer.numberOfTrailingZeros(stripeCount);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe(stripeBits);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * @return the previous future of the request id, or null
+     */
+    public ResponseFuture put(int requestId, ResponseFuture responseFuture) {
+        Stripe stripe = stripes[spread(requestId) & stripeMask];
+        synchronized (stripe) {
+            return stripe.put(requestId, responseFuture);
+        }
+    }
+
+    /**
+     * @return the removed future, or null if the request id is not in the table
+     */
+    public ResponseFuture remove(int requestId) {
+        Stripe stripe = stripes[spread(requestId) & stripeMask];
+        synchronized (stripe) {
+            return stripe.remove(requestId);
+        }
+    }
+
+    public ResponseFuture get(int requestId) {
+        Stripe stripe = stripes[spread(requestId) & stripeMask];
+        synchronized (stripe) {
+            return stripe.get(requestId);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes the requests whose timeout has passed, one stripe at a time.
+     *
+     * @param now the current time in milliseconds
+     * @return the removed futures
+     */
+    public List<ResponseFuture> removeExpired(long now) {
+        List<ResponseFuture> expired = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.removeExpired(now, expired);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Request ids are sequential, the low bits pick the stripe in turn so concurrent requests take different locks.
+     */
+    private static int spread(int requestId) {
+        return requestId ^ (requestId >>> 16);
+    }
+
+    private static final class Stripe {
+        private final int stripeBits;
+        private int[] keys = new int[INITIAL_STRIPE_CAPACITY];
+        private ResponseFuture[] values = new ResponseFuture[INITIAL_STRIPE_CAPACITY];
+        private int size;
+
+        Stripe(int stripeBits) {
+            this.stripeBits = stripeBits;
+        }
+
+        /**
+         * Multiplying by an odd constant permutes each block of {@code mask + 1} consecutive ids, a run of pending
+         * requests never collides with itself and is scattered over the slots.
+         */
+        private int home(int key, int mask) {
+            return ((spread(key) >>> stripeBits) * 0x9E3779B9) & mask;
+        }
+
+        ResponseFuture get(int key) {
+            int mask = values.length - 1;
+            for (int i = home(key, mask); values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        ResponseFuture put(int key, ResponseFuture value) {
+            int mask = values.length - 1;
+            int i = home(key, mask);
+            for (; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    ResponseFuture previous = values[i];
+                    values[i] = value;
+                    return previous;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            // Keep the load at most a half, probes stay short
+            if (++size > values.length >>> 1) {
+                resize(values.length << 1);
+            }
+            return null;
+        }
+
+        ResponseFuture remove(int key) {
+            int mask = values.length - 1;
+            for (int i = home(key, mask); values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    ResponseFuture removed = values[i];
+                    delete(i);
+                    shrinkIfSparse();
+                    return removed;
+                }
+            }
+            return null;
+        }
+
+        void removeExpired(long now, List<ResponseFuture> expired) {
+            int i = 0;
+            while (i < values.length) {
+                ResponseFuture value = values[i];
+                if (value != null && value.getBeginTimestamp() + value.getTimeoutMillis() <= now) {
+                    expired.add(value);
+                    // Another entry may have been shifted into this slot
+                    delete(i);
+                } else {
+                    i++;
+                }
+            }
+            shrinkIfSparse();
+        }
+
+        /**
+         * Backward shift deletion, entries of the probe chain behind the slot move up so no tombstones are left.
+         */
+        private void delete(int slot) {
+            int mask = values.length - 1;
+            int hole = slot;
+            int i = slot;
+            while (true) {
+                i = (i + 1) & mask;
+                if (values[i] == null) {
+                    break;
+                }
+                int home = home(keys[i], mask);
+                // Move the entry unless its home slot lies cyclically in (hole, i]
+                if (hole <= i ? (home <= hole || home > i) : (home <= hole && home > i)) {
+                    keys[hole] = keys[i];
+                    values[hole] = values[i];
+                    hole = i;
+                }
+            }
+            keys[hole] = 0;
+            values[hole] = null;
+            size--;
+        }
+
+        private void shrinkIfSparse() {
+            // Shrink at an eighth, a quarter of the grow threshold, so a steady load does not resize back and forth
+            if (values.length > INITIAL_STRIPE_CAPACITY && size < values.length >>> 3) {
+                resize(values.length >>> 1);
+            }
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            ResponseFuture[] oldValues = values;
+            keys = new int[capacity];
+            values = new ResponseFuture[capacity];
+            int mask = capacity - 1;
+            for (int j = 0; j < oldValues.length; j++) {
+                if (oldValues[j] != null) {
+                    int i = home(oldKeys[j], mask);
+                    while (values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+    }
+}
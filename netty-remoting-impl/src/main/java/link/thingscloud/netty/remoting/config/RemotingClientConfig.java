@@ -37,6 +37,16 @@ public class RemotingClientConfig extends RemotingConfig {
     private boolean clientCloseSocketIfTimeout = false;
     private boolean clientShortConnectionEnable = false;
 
+    /**
+     * Oneway requests wait up to this many microseconds to be sent together in one batch frame, 0 sends each
+     * request on its own. Batches need 0.8.0 servers or later.
+     */
+    private long clientOnewayBatchDelayMicros = 0;
+    /**
+     * A batch is sent early once its requests reach about this many bytes.
+     */
+    private int clientOnewayBatchMaxBytes = 64 * 1024;
+
     public boolean isClientNativeEpollEnable() {
         return clientNativeEpollEnable;
     }
@@ -101,6 +111,22 @@ public class RemotingClientConfig extends RemotingConfig {
         this.clientShortConnectionEnable = clientShortConnectionEnable;
     }
 
+    public long getClientOnewayBatchDelayMicros() {
+        return clientOnewayBatchDelayMicros;
+    }
+
+    public void setClientOnewayBatchDelayMicros(final long clientOnewayBatchDelayMicros) {
+        this.clientOnewayBatchDelayMicros = clientOnewayBatchDelayMicros;
+    }
+
+    public int getClientOnewayBatchMaxBytes() {
+        return clientOnewayBatchMaxBytes;
+    }
+
+    public void setClientOnewayBatchMaxBytes(final int clientOnewayBatchMaxBytes) {
+        this.clientOnewayBatchMaxBytes = clientOnewayBatchMaxBytes;
+    }
+
     public int getConnectTimeoutMillis() {
         return connectTimeoutMillis;
     }
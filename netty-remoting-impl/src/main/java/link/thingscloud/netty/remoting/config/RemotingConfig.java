@@ -17,6 +17,9 @@
 
 package link.thingscloud.netty.remoting.config;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author zhouhailin
  * @since 0.5.0
@@ -41,6 +44,63 @@ public abstract class RemotingConfig extends TcpSocketConfig {
     private int remotingShutdownQuietPeriodMillis = 2000;
     private int remotingShutdownTimeoutMillis = 15000;
 
+    /**
+     * Keep inbound payloads as retained slices of the receive buffer, the byte array is only copied out when
+     * {@code RemotingCommand#payload()} is called. The slice is released once the request processor or the
+     * async handler returns.
+     */
+    private boolean payloadZeroCopyEnable = false;
+
+    /**
+     * Send properties as varint prefixed key and value fields instead of "key\nvalue" strings. Until the peer has
+     * shown it reads them, legacy properties are sent with an extra "@codec" property, which peers of 0.8.0 or
+     * later answer in the compact format and older ones ignore.
+     */
+    private boolean propertyCompactEnable = false;
+
+    /**
+     * Entries of the per-connection property table, repeated properties are then sent as small indexes into it.
+     * 0 disables the table until the peer announces one. It is negotiated like the compact format and only used
+     * once the peer has shown it reads that.
+     */
+    private int propertyTableCapacity = 0;
+
+    /**
+     * Wire protocol version to send, 2 uses varint header fields and a flags byte. Servers accept both versions
+     * and answer in the one the client connected with, so a client may only pick 2 against 0.8.0 servers or later.
+     */
+    private int protocolVersion = 1;
+
+    /**
+     * Payloads of at least this many bytes are deflated on protocol v2 connections, 0 only compresses the
+     * commands marked by {@code RemotingCommand#compressed(boolean)}. Payloads which do not shrink are sent as is.
+     */
+    private int compressionThreshold = 0;
+
+    /**
+     * Deflate level from 1 to 9, the default favours speed over ratio.
+     */
+    private int compressionLevel = 1;
+
+    /**
+     * End protocol v2 frames with a CRC32C checksum of the frame, which the receiver verifies. The peer answers
+     * with checksums as well once it has received one, so enabling it on the client covers the connection.
+     */
+    private boolean checksumEnable = false;
+
+    /**
+     * Names of the payload classes registered with Kryo and Fury at start, in this order, instead of on their first
+     * serialization. Kryo numbers classes as they are registered, so list the same classes on both sides. Fury
+     * also generates their serializers at start.
+     */
+    private List<String> serializableClasses = new ArrayList<>();
+
+    /**
+     * Generate the Fury serializers of {@code serializableClasses} in the background, start returns without waiting.
+     * The classes themselves are always registered before start returns.
+     */
+    private boolean serializableWarmUpAsync = false;
+
     public abstract int getOnewayInvokeSemaphore();
 
     public abstract int getAsyncInvokeSemaphore();
@@ -116,4 +176,76 @@ public abstract class RemotingConfig extends TcpSocketConfig {
     public void setRemotingShutdownTimeoutMillis(final int remotingShutdownTimeoutMillis) {
         this.remotingShutdownTimeoutMillis = remotingShutdownTimeoutMillis;
     }
+
+    public boolean isPayloadZeroCopyEnable() {
+        return payloadZeroCopyEnable;
+    }
+
+    public void setPayloadZeroCopyEnable(final boolean payloadZeroCopyEnable) {
+        this.payloadZeroCopyEnable = payloadZeroCopyEnable;
+    }
+
+    public boolean isPropertyCompactEnable() {
+        return propertyCompactEnable;
+    }
+
+    public void setPropertyCompactEnable(final boolean propertyCompactEnable) {
+        this.propertyCompactEnable = propertyCompactEnable;
+    }
+
+    public int getPropertyTableCapacity() {
+        return propertyTableCapacity;
+    }
+
+    public void setPropertyTableCapacity(final int propertyTableCapacity) {
+        this.propertyTableCapacity = propertyTableCapacity;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public void setProtocolVersion(final int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(final int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(final int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public boolean isChecksumEnable() {
+        return checksumEnable;
+    }
+
+    public void setChecksumEnable(final boolean checksumEnable) {
+        this.checksumEnable = checksumEnable;
+    }
+
+    public List<String> getSerializableClasses() {
+        return serializableClasses;
+    }
+
+    public void setSerializableClasses(final List<String> serializableClasses) {
+        this.serializableClasses = serializableClasses;
+    }
+
+    public boolean isSerializableWarmUpAsync() {
+        return serializableWarmUpAsync;
+    }
+
+    public void setSerializableWarmUpAsync(final boolean serializableWarmUpAsync) {
+        this.serializableWarmUpAsync = serializableWarmUpAsync;
+    }
 }
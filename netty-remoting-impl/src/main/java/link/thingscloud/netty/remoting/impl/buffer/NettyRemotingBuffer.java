@@ -21,6 +21,7 @@ import io.netty.buffer.ByteBuf;
 import link.thingscloud.netty.remoting.api.buffer.RemotingBuffer;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 /**
  * @author zhouhailin
@@ -68,6 +69,11 @@ public class NettyRemotingBuffer implements RemotingBuffer {
         buffer.writeLong(value);
     }
 
+    @Override
+    public int writeCharSequence(CharSequence sequence, Charset charset) {
+        return buffer.writeCharSequence(sequence, charset);
+    }
+
     @Override
     public byte readByte() {
         return buffer.readByte();
@@ -83,6 +89,14 @@ public class NettyRemotingBuffer implements RemotingBuffer {
         buffer.readBytes(dst);
     }
 
+    public ByteBuf buffer() {
+        return buffer;
+    }
+
+    public ByteBuf readRetainedSlice(int length) {
+        return buffer.readRetainedSlice(length);
+    }
+
     @Override
     public short readShort() {
         return buffer.readShort();
@@ -98,6 +112,11 @@ public class NettyRemotingBuffer implements RemotingBuffer {
         return buffer.readLong();
     }
 
+    @Override
+    public CharSequence readCharSequence(int length, Charset charset) {
+        return buffer.readCharSequence(length, charset);
+    }
+
     @Override
     public int readableBytes() {
         return buffer.readableBytes();
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.remoting.impl.command;
+
+import io.netty.buffer.ByteBuf;
+import link.thingscloud.netty.remoting.api.command.Serializer;
+
+/**
+ * A {@link Serializer} which also reads and writes netty buffers directly, used by the codec instead of going
+ * through byte arrays.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public interface ByteBufSerializer extends Serializer {
+
+    /**
+     * Appends the serialized object at the writer index of the buffer.
+     */
+    void serialize(Object obj, ByteBuf out);
+
+    /**
+     * Deserializes the readable bytes of the buffer, which may be consumed.
+     */
+    <T> T deserialize(ByteBuf in, Class<T> classOfT);
+}
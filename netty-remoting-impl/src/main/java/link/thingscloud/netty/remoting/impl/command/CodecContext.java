@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.remoting.impl.command;
+
+import java.util.zip.Inflater;
+
+/**
+ * Codec state of one connection, shared by its encoder and decoder.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public class CodecContext {
+    /**
+     * Set once the peer has sent properties in the compact format, so it can read them as well.
+     */
+    private volatile boolean compactProperties;
+    /**
+     * The protocol version the peer speaks, 0 until its first frame is received.
+     */
+    private volatile int protocolVersion;
+    /**
+     * The property table capacity announced by the peer, 0 until it sends indexed properties.
+     */
+    private volatile int peerPropertyTableCapacity;
+    /**
+     * Set once the peer has sent a frame with a checksum trailer, the frames sent to it carry one as well.
+     */
+    private volatile boolean checksum;
+    private PropertyTable encoderTable;
+    private PropertyTable decoderTable;
+    private Inflater inflater;
+
+    public boolean compactProperties() {
+        return compactProperties;
+    }
+
+    public void compactProperties(boolean compactProperties) {
+        this.compactProperties = compactProperties;
+    }
+
+    public int protocolVersion() {
+        return protocolVersion;
+    }
+
+    public void protocolVersion(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    public int peerPropertyTableCapacity() {
+        return peerPropertyTableCapacity;
+    }
+
+    public void peerPropertyTableCapacity(int peerPropertyTableCapacity) {
+        this.peerPropertyTableCapacity = peerPropertyTableCapacity;
+    }
+
+    public boolean checksum() {
+        return checksum;
+    }
+
+    public void checksum(boolean checksum) {
+        this.checksum = checksum;
+    }
+
+    public PropertyTable encoderTable() {
+        return encoderTable;
+    }
+
+    public void encoderTable(PropertyTable encoderTable) {
+        this.encoderTable = encoderTable;
+    }
+
+    public PropertyTable decoderTable() {
+        return decoderTable;
+    }
+
+    public void decoderTable(PropertyTable decoderTable) {
+        this.decoderTable = decoderTable;
+    }
+
+    /**
+     * @return the inflater of the receiving side, reset after each payload
+     */
+    public Inflater inflater() {
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        return inflater;
+    }
+
+    /**
+     * Frees the native state of the inflater, called once the channel is closed.
+     */
+    public void release() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+}
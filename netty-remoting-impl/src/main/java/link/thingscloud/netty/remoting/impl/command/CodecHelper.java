@@ -17,17 +17,22 @@
 
 package link.thingscloud.netty.remoting.impl.command;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import link.thingscloud.netty.remoting.api.buffer.RemotingBuffer;
 import link.thingscloud.netty.remoting.api.command.LanguageCode;
 import link.thingscloud.netty.remoting.api.command.RemotingCommand;
 import link.thingscloud.netty.remoting.api.command.SerializableType;
 import link.thingscloud.netty.remoting.api.command.TrafficType;
 import link.thingscloud.netty.remoting.api.exception.RemotingCodecException;
+import link.thingscloud.netty.remoting.impl.buffer.NettyRemotingBuffer;
 import link.thingscloud.netty.remoting.internal.KryoUtils;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * @author zhouhailin
@@ -39,82 +44,334 @@ public class CodecHelper {
     public final static int MIN_PROTOCOL_LEN = 1 + 4 + 2 + 1 + 2 + 4 + 1 + 1 + 2 + 2 + 2 + 4;
     public final static byte PROTOCOL_MAGIC = 0x14;
     public final static byte PROTOCOL_MAGIC_G = 0x47;
+    // ProtocolMagic(1) + Flags(1) + varint FrameLength, then varint CmdCode + LanguageCode(1) + varint CmdVersion + varint RequestID
+    // + TrafficType(1) + SerializableType(1) + varint OpCode + varint RemarkLen + varint PropertiesSize + varint PayloadLen,
+    // FrameLength counts the bytes after itself
+    public final static byte PROTOCOL_MAGIC_V2 = 0x24;
+    public final static int PROTOCOL_VERSION_1 = 1;
+    public final static int PROTOCOL_VERSION_2 = 2;
+    // Flags of a v2 frame
+    public final static int FLAG_COMPRESSED = 0x01;
+    public final static int FLAG_CHECKSUM = 0x02;
+    public final static int FLAG_INDEXED_PROPERTIES = 0x08;
+    final static int SUPPORTED_FLAGS = FLAG_COMPRESSED | FLAG_CHECKSUM | FLAG_INDEXED_PROPERTIES;
+    // CRC32C of the frame from the magic code to the end of the payload, ends a frame with FLAG_CHECKSUM
+    public final static int CHECKSUM_LEN = 4;
     final static int REMARK_MAX_LEN = Short.MAX_VALUE;
     final static int PROPERTY_MAX_LEN = 524288; // 512KB
     final static int PAYLOAD_MAX_LEN = 16777216; // 16MB
+    final static int MAX_INFLATE_RATIO = 1032; // Upper bound of the deflate expansion
     public final static int PACKET_MAX_LEN = MIN_PROTOCOL_LEN + REMARK_MAX_LEN + PROPERTY_MAX_LEN + PAYLOAD_MAX_LEN;
     private final static char PROPERTY_SEPARATOR = '\n';
+    // The high bit of PropertiesSize marks the compact format: varint(keyLen) + key + varint(valueLen) + value
+    final static short COMPACT_PROPERTIES_FLAG = (short) 0x8000;
+    // Together with the compact flag, every property starts with varint(index << 3 | entry type), see PropertyTable
+    final static short INDEXED_PROPERTIES_FLAG = 0x4000;
+    final static int PROPERTIES_SIZE_MASK = 0x3FFF;
+    // Pair from the table
+    final static int ENTRY_INDEXED = 0;
+    // Key from the table, literal value
+    final static int ENTRY_KEY_INDEXED = 1;
+    final static int ENTRY_KEY_INDEXED_INSERT = 2;
+    // Literal key and value
+    final static int ENTRY_LITERAL = 3;
+    final static int ENTRY_LITERAL_INSERT = 4;
+    // Table capacity announcement, precedes the first entry of a connection and is not counted as a property
+    final static int ENTRY_TABLE_CAPACITY = 5;
+    private final static int ENTRY_TYPE_BITS = 3;
+    private final static int ENTRY_TYPE_MASK = 0x7;
+    // Sent among the legacy properties by peers which read compact and indexed properties, older peers ignore it
+    public final static String CODEC_PROPERTY = "@codec";
+    final static String CODEC_PROPERTY_VALUE = "compact,indexed";
     private final static Charset REMOTING_CHARSET = StandardCharsets.UTF_8;
 
     public static void encodeCommand(final RemotingCommand command, final RemotingBuffer out) {
-        out.writeByte(PROTOCOL_MAGIC);
+        byte[] payload = command.payload();
+        int payloadLen = payload == null ? 0 : payload.length;
+
+        encodeHeader(command, payloadLen, out);
+        if (payloadLen != 0) {
+            out.writeBytes(payload);
+        }
+    }
+
+    /**
+     * Encodes the whole frame except the payload bytes, the caller appends exactly {@code payloadLen} bytes of
+     * payload after it.
+     *
+     * @param command    the command to encode
+     * @param payloadLen the length of the payload which follows the header
+     * @param out        the buffer to write to
+     */
+    public static void encodeHeader(final RemotingCommand command, final int payloadLen, final RemotingBuffer out) {
+        encodeHeader(layout(command, payloadLen), out);
+    }
+
+    /**
+     * Validates the command and computes the exact frame length, so the outbound buffer can be allocated once.
+     *
+     * @param command    the command to encode
+     * @param payloadLen the length of the payload which follows the header
+     * @return the frame layout to pass to {@link #encodeHeader(FrameLayout, RemotingBuffer)}
+     */
+    public static FrameLayout layout(final RemotingCommand command, final int payloadLen) {
+        return layout(command, payloadLen, false);
+    }
+
+    /**
+     * Validates the command and computes the exact frame length, so the outbound buffer can be allocated once.
+     *
+     * @param command           the command to encode
+     * @param payloadLen        the length of the payload which follows the header
+     * @param compactProperties encode the properties in the compact format, only peers of 0.8.0 or later read it
+     * @return the frame layout to pass to {@link #encodeHeader(FrameLayout, RemotingBuffer)}
+     */
+    public static FrameLayout layout(final RemotingCommand command, final int payloadLen, final boolean compactProperties) {
+        return layout(command, payloadLen, compactProperties, null);
+    }
 
-        short remarkLen = 0;
-        byte[] remark = null;
-        if (command.remark() != null) {
-            remark = command.remark().getBytes(REMOTING_CHARSET);
+    /**
+     * Validates the command and computes the exact frame length, so the outbound buffer can be allocated once.
+     * With a property table the properties are compact and indexed, the table updates are staged and committed
+     * when the header is encoded, as the peer updates its own copy when decoding the frame.
+     *
+     * @param command           the command to encode
+     * @param payloadLen        the length of the payload which follows the header
+     * @param compactProperties encode the properties in the compact format, only peers of 0.8.0 or later read it
+     * @param table             the sending table of the connection, may be null
+     * @return the frame layout to pass to {@link #encodeHeader(FrameLayout, RemotingBuffer)}
+     */
+    public static FrameLayout layout(final RemotingCommand command, final int payloadLen, final boolean compactProperties,
+                                     final PropertyTable table) {
+        return layout(command, payloadLen, compactProperties, table, false);
+    }
+
+    /**
+     * Validates the command and computes the exact frame length, so the outbound buffer can be allocated once.
+     *
+     * @param command           the command to encode
+     * @param payloadLen        the length of the payload which follows the header
+     * @param compactProperties encode the properties in the compact format, only peers of 0.8.0 or later read it
+     * @param table             the sending table of the connection, may be null
+     * @param advertise         add {@link #CODEC_PROPERTY} to legacy properties, so the peer learns that compact
+     *                          and indexed properties can be sent
+     * @return the frame layout to pass to {@link #encodeHeader(FrameLayout, RemotingBuffer)}
+     */
+    public static FrameLayout layout(final RemotingCommand command, final int payloadLen, final boolean compactProperties,
+                                     final PropertyTable table, final boolean advertise) {
+        FrameLayout layout = new FrameLayout(command, PROTOCOL_VERSION_1, 0, payloadLen);
+        layoutRemark(layout);
+        layoutProperties(layout, compactProperties, table, advertise);
+        checkPayloadLen(payloadLen);
+
+        layout.frameLength = MIN_PROTOCOL_LEN + layout.remarkLength() + layout.propsLen + payloadLen;
+        return layout;
+    }
+
+    /**
+     * Validates the command and computes the exact length of a v2 frame. Properties are always compact in v2, and
+     * indexed when a table is given.
+     *
+     * @param command    the command to encode
+     * @param payloadLen the length of the payload which follows the header
+     * @param flags      the {@code FLAG_*} bits of the frame
+     * @param table      the sending table of the connection, may be null
+     * @return the frame layout to pass to {@link #encodeHeader(FrameLayout, RemotingBuffer)}
+     */
+    public static FrameLayout layoutV2(final RemotingCommand command, final int payloadLen, final int flags,
+                                       final PropertyTable table) {
+        FrameLayout layout = new FrameLayout(command, PROTOCOL_VERSION_2, table != null ? flags | FLAG_INDEXED_PROPERTIES : flags, payloadLen);
+        layoutRemark(layout);
+        layoutProperties(layout, true, table, false);
+        checkPayloadLen(payloadLen);
+
+        int remarkLen = layout.remarkLength();
+        int bodyLength = varIntSize(command.cmdCode() & 0xFFFF)
+                + 1
+                + varIntSize(command.cmdVersion() & 0xFFFF)
+                + varIntSize(command.requestID())
+                + 1
+                + 1
+                + varIntSize(command.opCode() & 0xFFFF)
+                + varIntSize(remarkLen) + remarkLen
+                + varIntSize(layout.propertiesSize()) + layout.propsLen
+                + varIntSize(payloadLen) + payloadLen
+                + layout.trailerLength();
+
+        layout.bodyLength = bodyLength;
+        layout.frameLength = 1 + 1 + varIntSize(bodyLength) + bodyLength;
+        return layout;
+    }
+
+    private static void layoutRemark(final FrameLayout layout) {
+        if (layout.command.remark() != null) {
+            byte[] remark = layout.command.remark().getBytes(REMOTING_CHARSET);
             if (remark.length > REMARK_MAX_LEN) {
                 throw new RemotingCodecException(String.format("Remark len: %d over max limit: %d", remark.length, REMARK_MAX_LEN));
             }
-            remarkLen = (short) remark.length;
+            layout.remark = remark;
         }
+    }
 
-        byte[][] props = null;
+    private static void layoutProperties(final FrameLayout layout, final boolean compactProperties, final PropertyTable table,
+                                         final boolean advertise) {
+        final RemotingCommand command = layout.command;
         int propsLen = 0;
-        StringBuilder sb = new StringBuilder();
-        if (command.properties() != null && !command.properties().isEmpty()) {
-            props = new byte[command.properties().size()][];
+        boolean hasProperties = command.properties() != null && !command.properties().isEmpty();
+        if (hasProperties && (table != null || compactProperties)) {
+            if (command.properties().size() > PROPERTIES_SIZE_MASK) {
+                throw new RemotingCodecException(String.format("Properties size: %d over max limit: %d", command.properties().size(), PROPERTIES_SIZE_MASK));
+            }
+            if (table != null) {
+                layout.table = table;
+                if (table.announce()) {
+                    layout.tableCapacity = table.capacity();
+                    propsLen += varIntSize(layout.tableCapacity << ENTRY_TYPE_BITS | ENTRY_TABLE_CAPACITY);
+                }
+                int[] propLens = new int[command.properties().size() * 3];
+                int i = 0;
+                for (Map.Entry<String, String> next : command.properties().entrySet()) {
+                    String key = String.valueOf(next.getKey());
+                    String value = String.valueOf(next.getValue());
+                    int header;
+                    int keyLen = -1;
+                    int valueLen = -1;
+
+                    int index = table.indexOf(key, value);
+                    if (index >= 0) {
+                        header = index << ENTRY_TYPE_BITS | ENTRY_INDEXED;
+                    } else {
+                        int keyIndex = table.indexOfKey(key);
+                        boolean insert = table.shouldInsert(key, value, key.length() + value.length());
+                        valueLen = ByteBufUtil.utf8Bytes(value);
+                        if (keyIndex >= 0) {
+                            header = keyIndex << ENTRY_TYPE_BITS | (insert ? ENTRY_KEY_INDEXED_INSERT : ENTRY_KEY_INDEXED);
+                        } else {
+                            header = insert ? ENTRY_LITERAL_INSERT : ENTRY_LITERAL;
+                            keyLen = ByteBufUtil.utf8Bytes(key);
+                        }
+                        if (insert) {
+                            table.stage(key, value);
+                            layout.inserts++;
+                        }
+                    }
+                    propLens[i++] = header;
+                    propLens[i++] = keyLen;
+                    propLens[i++] = valueLen;
+
+                    propsLen += varIntSize(header);
+                    if (keyLen >= 0) {
+                        propsLen += varIntSize(keyLen) + keyLen;
+                    }
+                    if (valueLen >= 0) {
+                        propsLen += varIntSize(valueLen) + valueLen;
+                    }
+                }
+                layout.propLens = propLens;
+            } else {
+                int[] propLens = new int[command.properties().size() * 3];
+                int i = 0;
+                for (Map.Entry<String, String> next : command.properties().entrySet()) {
+                    int keyLen = ByteBufUtil.utf8Bytes(String.valueOf(next.getKey()));
+                    int valueLen = ByteBufUtil.utf8Bytes(String.valueOf(next.getValue()));
+                    propLens[i++] = -1;
+                    propLens[i++] = keyLen;
+                    propLens[i++] = valueLen;
+
+                    propsLen += varIntSize(keyLen) + keyLen + varIntSize(valueLen) + valueLen;
+                    if (propsLen > PROPERTY_MAX_LEN) {
+                        break;
+                    }
+                }
+                layout.propLens = propLens;
+            }
+        } else if (hasProperties || advertise) {
+            StringBuilder sb = new StringBuilder();
+            byte[][] props = new byte[(hasProperties ? command.properties().size() : 0) + (advertise ? 1 : 0)][];
             int i = 0;
-            for (Map.Entry<String, String> next : command.properties().entrySet()) {
-                sb.setLength(0);
-                sb.append(next.getKey());
-                sb.append(PROPERTY_SEPARATOR);
-                sb.append(next.getValue());
+            if (hasProperties) {
+                for (Map.Entry<String, String> next : command.properties().entrySet()) {
+                    sb.setLength(0);
+                    sb.append(next.getKey());
+                    sb.append(PROPERTY_SEPARATOR);
+                    sb.append(next.getValue());
 
-                props[i] = sb.toString().getBytes(REMOTING_CHARSET);
+                    props[i] = sb.toString().getBytes(REMOTING_CHARSET);
 
-                if (props[i].length > Short.MAX_VALUE) {
-                    throw new RemotingCodecException(String.format("Property KV len: %d over max limit: %d", props[i].length, Short.MAX_VALUE));
-                }
+                    if (props[i].length > Short.MAX_VALUE) {
+                        throw new RemotingCodecException(String.format("Property KV len: %d over max limit: %d", props[i].length, Short.MAX_VALUE));
+                    }
 
-                propsLen += 2;
-                propsLen += props[i].length;
-                i++;
+                    propsLen += 2;
+                    propsLen += props[i].length;
+                    i++;
+                }
+            }
+            if (advertise) {
+                props[i] = (CODEC_PROPERTY + PROPERTY_SEPARATOR + CODEC_PROPERTY_VALUE).getBytes(REMOTING_CHARSET);
+                propsLen += 2 + props[i].length;
             }
+            layout.props = props;
         }
 
         if (propsLen > PROPERTY_MAX_LEN) {
             throw new RemotingCodecException(String.format("Properties total len: %d over max limit: %d", propsLen, PROPERTY_MAX_LEN));
         }
+        layout.propsLen = propsLen;
+    }
 
-        int payloadLen = command.payload() == null ? 0 : command.payload().length;
-
+    private static void checkPayloadLen(final int payloadLen) {
         if (payloadLen > PAYLOAD_MAX_LEN) {
             throw new RemotingCodecException(String.format("Payload len: %d over max limit: %d", payloadLen, PAYLOAD_MAX_LEN));
         }
+    }
 
-        int totalLength = MIN_PROTOCOL_LEN
-                + remarkLen
-                + propsLen
-                + payloadLen;
+    /**
+     * Encodes the whole frame except the payload bytes.
+     *
+     * @param layout the layout computed by {@link #layout(RemotingCommand, int)} or
+     *               {@link #layoutV2(RemotingCommand, int, int, PropertyTable)}
+     * @param out    the buffer to write to
+     */
+    public static void encodeHeader(final FrameLayout layout, final RemotingBuffer out) {
+        if (layout.version == PROTOCOL_VERSION_2) {
+            encodeHeaderV2(layout, out);
+        } else {
+            encodeHeaderV1(layout, out);
+        }
+        // The peer only sees the table updates of frames which are written
+        if (layout.table != null) {
+            layout.table.commit(layout.tableCapacity > 0, layout.inserts);
+        }
+    }
+
+    private static void encodeHeaderV1(final FrameLayout layout, final RemotingBuffer out) {
+        final RemotingCommand command = layout.command;
 
-        out.writeInt(totalLength);
+        out.writeByte(PROTOCOL_MAGIC);
+        out.writeInt(layout.frameLength);
         out.writeShort(command.cmdCode());
         out.writeByte((byte) command.language().ordinal());
         out.writeShort(command.cmdVersion());
         out.writeInt(command.requestID());
         out.writeByte((byte) command.trafficType().ordinal());
-        out.writeByte((byte) command.serializableType().ordinal());
+        out.writeByte((byte) command.serializableTypeId());
         out.writeShort(command.opCode());
 
-        out.writeShort(remarkLen);
-        if (remarkLen != 0) {
-            out.writeBytes(remark);
+        if (layout.remark != null) {
+            out.writeShort((short) layout.remark.length);
+            out.writeBytes(layout.remark);
+        } else {
+            out.writeShort((short) 0);
         }
 
-        if (props != null) {
-            out.writeShort((short) props.length);
-            for (byte[] prop : props) {
+        if (layout.propLens != null) {
+            short flags = layout.table != null ? (short) (COMPACT_PROPERTIES_FLAG | INDEXED_PROPERTIES_FLAG) : COMPACT_PROPERTIES_FLAG;
+            out.writeShort((short) (flags | layout.propertiesSize()));
+            encodeProperties(layout, out);
+        } else if (layout.props != null) {
+            out.writeShort((short) layout.props.length);
+            for (byte[] prop : layout.props) {
                 out.writeShort((short) prop.length);
                 out.writeBytes(prop);
             }
@@ -122,13 +379,86 @@ public class CodecHelper {
             out.writeShort((short) 0);
         }
 
-        out.writeInt(payloadLen);
-        if (payloadLen != 0) {
-            out.writeBytes(command.payload());
+        out.writeInt(layout.payloadLen);
+    }
+
+    private static void encodeHeaderV2(final FrameLayout layout, final RemotingBuffer out) {
+        final RemotingCommand command = layout.command;
+
+        out.writeByte(PROTOCOL_MAGIC_V2);
+        out.writeByte((byte) layout.flags);
+        writeVarInt(layout.bodyLength, out);
+        writeVarInt(command.cmdCode() & 0xFFFF, out);
+        out.writeByte((byte) command.language().ordinal());
+        writeVarInt(command.cmdVersion() & 0xFFFF, out);
+        writeVarInt(command.requestID(), out);
+        out.writeByte((byte) command.trafficType().ordinal());
+        out.writeByte((byte) command.serializableTypeId());
+        writeVarInt(command.opCode() & 0xFFFF, out);
+
+        writeVarInt(layout.remarkLength(), out);
+        if (layout.remark != null) {
+            out.writeBytes(layout.remark);
+        }
+
+        writeVarInt(layout.propertiesSize(), out);
+        if (layout.propLens != null) {
+            encodeProperties(layout, out);
+        }
+
+        writeVarInt(layout.payloadLen, out);
+    }
+
+    private static void encodeProperties(final FrameLayout layout, final RemotingBuffer out) {
+        if (layout.tableCapacity > 0) {
+            writeVarInt(layout.tableCapacity << ENTRY_TYPE_BITS | ENTRY_TABLE_CAPACITY, out);
+        }
+        int i = 0;
+        for (Map.Entry<String, String> next : layout.command.properties().entrySet()) {
+            int header = layout.propLens[i++];
+            int keyLen = layout.propLens[i++];
+            int valueLen = layout.propLens[i++];
+            if (header >= 0) {
+                writeVarInt(header, out);
+            }
+            if (keyLen >= 0) {
+                writeVarInt(keyLen, out);
+                out.writeCharSequence(String.valueOf(next.getKey()), REMOTING_CHARSET);
+            }
+            if (valueLen >= 0) {
+                writeVarInt(valueLen, out);
+                out.writeCharSequence(String.valueOf(next.getValue()), REMOTING_CHARSET);
+            }
         }
     }
 
     public static RemotingCommand decode(final RemotingBuffer in) {
+        return decode(in, false);
+    }
+
+    /**
+     * Decodes a command, the magic code and the total length have been consumed already.
+     *
+     * @param in            the buffer to read from
+     * @param retainPayload keep the payload as a retained slice of {@code in} instead of copying it out,
+     *                      the caller must release the command after use
+     * @return the decoded command
+     */
+    public static RemotingCommand decode(final RemotingBuffer in, final boolean retainPayload) {
+        return decode(in, retainPayload, null);
+    }
+
+    /**
+     * Decodes a command, the magic code and the total length have been consumed already. Both property formats
+     * are accepted, receiving the compact one is recorded in {@code context}.
+     *
+     * @param in            the buffer to read from
+     * @param retainPayload keep the payload as a retained slice of {@code in} instead of copying it out,
+     *                      the caller must release the command after use
+     * @param context       the codec state of the connection, may be null
+     * @return the decoded command
+     */
+    public static RemotingCommand decode(final RemotingBuffer in, final boolean retainPayload, final CodecContext context) {
         RemotingCommandImpl cmd = new RemotingCommandImpl();
 
         cmd.cmdCode(in.readShort());
@@ -136,7 +466,7 @@ public class CodecHelper {
         cmd.cmdVersion(in.readShort());
         cmd.requestID(in.readInt());
         cmd.trafficType(TrafficType.parse(in.readByte()));
-        cmd.serializableType(SerializableType.parse(in.readByte()));
+        cmd.serializableTypeId(in.readByte() & SerializableType.MAX_TYPE_ID);
         cmd.opCode(in.readShort());
 
         short remarkLen = in.readShort();
@@ -160,7 +490,11 @@ public class CodecHelper {
                     if (index > 0) {
                         String key = str.substring(0, index);
                         String value = str.substring(index + 1);
-                        cmd.property(key, value);
+                        if (!CODEC_PROPERTY.equals(key)) {
+                            cmd.property(key, value);
+                        } else if (context != null) {
+                            context.compactProperties(true);
+                        }
                     }
                 }
 
@@ -170,21 +504,330 @@ public class CodecHelper {
                     throw new RemotingCodecException(String.format("Properties total len: %d over max limit: %d", propsLen, PROPERTY_MAX_LEN));
                 }
             }
+        } else if ((propsSize & INDEXED_PROPERTIES_FLAG) != 0) {
+            decodeIndexedProperties(in, cmd, propsSize & PROPERTIES_SIZE_MASK, context);
+        } else if (propsSize < 0) {
+            decodeCompactProperties(in, cmd, propsSize & PROPERTIES_SIZE_MASK, context);
+        }
+
+        decodePayload(in, cmd, in.readInt(), retainPayload);
+        return cmd;
+    }
+
+    /**
+     * Decodes a v2 command, the magic code, the flags and the frame length have been consumed already. The checksum
+     * trailer of a {@link #FLAG_CHECKSUM} frame is left to the caller.
+     *
+     * @param in            the buffer to read from
+     * @param flags         the {@code FLAG_*} bits of the frame
+     * @param retainPayload keep the payload as a retained slice of {@code in} instead of copying it out,
+     *                      the caller must release the command after use
+     * @param context       the codec state of the connection, may be null
+     * @return the decoded command
+     */
+    public static RemotingCommand decodeV2(final RemotingBuffer in, final int flags, final boolean retainPayload,
+                                           final CodecContext context) {
+        if ((flags & ~SUPPORTED_FLAGS) != 0) {
+            throw new RemotingCodecException(String.format("Unsupported frame flags %d", flags));
+        }
+
+        RemotingCommandImpl cmd = new RemotingCommandImpl();
+
+        cmd.cmdCode(readVarShort(in, "Cmd code"));
+        cmd.language(LanguageCode.parse(in.readByte()));
+        cmd.cmdVersion(readVarShort(in, "Cmd version"));
+        cmd.requestID(readVarInt(in));
+        cmd.trafficType(TrafficType.parse(in.readByte()));
+        cmd.serializableTypeId(in.readByte() & SerializableType.MAX_TYPE_ID);
+        cmd.opCode(readVarShort(in, "Op code"));
+
+        int remarkLen = readVarInt(in);
+        if (remarkLen < 0 || remarkLen > REMARK_MAX_LEN) {
+            throw new RemotingCodecException(String.format("Remark len: %d over max limit: %d", remarkLen, REMARK_MAX_LEN));
+        }
+        if (remarkLen > 0) {
+            cmd.remark(in.readCharSequence(remarkLen, REMOTING_CHARSET).toString());
         }
 
-        int payloadLen = in.readInt();
+        int propsSize = readVarInt(in);
+        if (propsSize < 0 || propsSize > PROPERTIES_SIZE_MASK) {
+            throw new RemotingCodecException(String.format("Properties size: %d over max limit: %d", propsSize, PROPERTIES_SIZE_MASK));
+        }
+        if ((flags & FLAG_INDEXED_PROPERTIES) != 0) {
+            decodeIndexedProperties(in, cmd, propsSize, context);
+        } else {
+            decodeCompactProperties(in, cmd, propsSize, context);
+        }
 
+        int payloadLen = readVarInt(in);
+        if ((flags & FLAG_COMPRESSED) != 0 && payloadLen > 0) {
+            decodeCompressedPayload(in, cmd, payloadLen, retainPayload, context);
+        } else {
+            decodePayload(in, cmd, payloadLen, retainPayload);
+        }
+        return cmd;
+    }
+
+    private static void decodeCompactProperties(final RemotingBuffer in, final RemotingCommandImpl cmd, final int size,
+                                                final CodecContext context) {
+        int propsLen = 0;
+        for (int i = 0; i < size; i++) {
+            int keyLen = readVarInt(in);
+            propsLen = checkPropertiesLen(propsLen + varIntSize(keyLen) + keyLen);
+            String key = in.readCharSequence(keyLen, REMOTING_CHARSET).toString();
+
+            int valueLen = readVarInt(in);
+            propsLen = checkPropertiesLen(propsLen + varIntSize(valueLen) + valueLen);
+            String value = in.readCharSequence(valueLen, REMOTING_CHARSET).toString();
+
+            cmd.property(key, value);
+        }
+        if (context != null && size > 0) {
+            context.compactProperties(true);
+        }
+    }
+
+    private static void decodeIndexedProperties(final RemotingBuffer in, final RemotingCommandImpl cmd, final int size,
+                                                final CodecContext context) {
+        if (context == null) {
+            throw new RemotingCodecException("Indexed properties without a connection context");
+        }
+        PropertyTable table = context.decoderTable();
+        int propsLen = 0;
+        for (int i = 0; i < size; ) {
+            int header = readVarInt(in);
+            propsLen = checkPropertiesLen(propsLen + varIntSize(header));
+            int type = header & ENTRY_TYPE_MASK;
+            int index = header >>> ENTRY_TYPE_BITS;
+
+            if (type == ENTRY_TABLE_CAPACITY) {
+                table = PropertyTable.forDecoder(index);
+                context.decoderTable(table);
+                context.peerPropertyTableCapacity(index);
+                continue;
+            }
+            if (table == null) {
+                throw new RemotingCodecException("Indexed property before the table capacity");
+            }
+
+            String key;
+            String value;
+            switch (type) {
+                case ENTRY_INDEXED:
+                    key = table.key(index);
+                    value = table.value(index);
+                    break;
+                case ENTRY_KEY_INDEXED:
+                case ENTRY_KEY_INDEXED_INSERT:
+                    key = table.key(index);
+                    int valueLen = readVarInt(in);
+                    propsLen = checkPropertiesLen(propsLen + varIntSize(valueLen) + valueLen);
+                    value = in.readCharSequence(valueLen, REMOTING_CHARSET).toString();
+                    break;
+                case ENTRY_LITERAL:
+                case ENTRY_LITERAL_INSERT:
+                    int keyLen = readVarInt(in);
+                    propsLen = checkPropertiesLen(propsLen + varIntSize(keyLen) + keyLen);
+                    key = in.readCharSequence(keyLen, REMOTING_CHARSET).toString();
+                    valueLen = readVarInt(in);
+                    propsLen = checkPropertiesLen(propsLen + varIntSize(valueLen) + valueLen);
+                    value = in.readCharSequence(valueLen, REMOTING_CHARSET).toString();
+                    break;
+                default:
+                    throw new RemotingCodecException("Unknown property entry type " + type);
+            }
+
+            if (type == ENTRY_KEY_INDEXED_INSERT || type == ENTRY_LITERAL_INSERT) {
+                if (key.length() + value.length() > PropertyTable.MAX_ENTRY_LEN) {
+                    throw new RemotingCodecException(String.format("Property table entry len: %d over max limit: %d",
+                            key.length() + value.length(), PropertyTable.MAX_ENTRY_LEN));
+                }
+                table.insert(key, value);
+            }
+            cmd.property(key, value);
+            i++;
+        }
+        context.compactProperties(true);
+    }
+
+    private static void decodePayload(final RemotingBuffer in, final RemotingCommandImpl cmd, final int payloadLen,
+                                      final boolean retainPayload) {
         if (payloadLen > PAYLOAD_MAX_LEN) {
             throw new RemotingCodecException(String.format("Payload len: %d over max limit: %d", payloadLen, PAYLOAD_MAX_LEN));
         }
 
         if (payloadLen > 0) {
-            byte[] bytes = new byte[payloadLen];
-            in.readBytes(bytes);
-            cmd.payload(bytes);
+            // A batch is expanded from the inbound buffer, its frames are not copied out
+            if ((retainPayload || cmd.trafficType() == TrafficType.BATCH) && in instanceof NettyRemotingBuffer) {
+                cmd.payloadBuffer(((NettyRemotingBuffer) in).readRetainedSlice(payloadLen));
+            } else {
+                byte[] bytes = new byte[payloadLen];
+                in.readBytes(bytes);
+                cmd.payload(bytes);
+            }
         }
+    }
 
-        return cmd;
+    /**
+     * Inflates a compressed payload, varint(uncompressedLen) + raw deflate data, straight into the payload array,
+     * or into a pooled heap buffer when the payload is retained.
+     */
+    private static void decodeCompressedPayload(final RemotingBuffer in, final RemotingCommandImpl cmd, final int payloadLen,
+                                                final boolean retainPayload, final CodecContext context) {
+        if (payloadLen > PAYLOAD_MAX_LEN) {
+            throw new RemotingCodecException(String.format("Payload len: %d over max limit: %d", payloadLen, PAYLOAD_MAX_LEN));
+        }
+        int start = in.readerIndex();
+        int uncompressedLen = readVarInt(in);
+        if (uncompressedLen < 0 || uncompressedLen > PAYLOAD_MAX_LEN) {
+            throw new RemotingCodecException(String.format("Uncompressed payload len: %d over max limit: %d", uncompressedLen, PAYLOAD_MAX_LEN));
+        }
+        int compressedLen = payloadLen - (in.readerIndex() - start);
+        if (compressedLen < 0 || compressedLen > in.readableBytes()) {
+            throw new RemotingCodecException(String.format("Compressed payload len: %d is wrong", compressedLen));
+        }
+        // The declared length is only trusted as far as deflate can expand the data, nothing is allocated before
+        if ((long) compressedLen * MAX_INFLATE_RATIO < uncompressedLen) {
+            throw new RemotingCodecException(String.format("Uncompressed payload len: %d over inflate ratio limit of compressed len: %d",
+                    uncompressedLen, compressedLen));
+        }
+
+        Inflater inflater = context != null ? context.inflater() : new Inflater(true);
+        ByteBuf target = null;
+        try {
+            ByteBuf source = in instanceof NettyRemotingBuffer ? ((NettyRemotingBuffer) in).buffer() : null;
+            if (source != null && source.hasArray()) {
+                inflater.setInput(source.array(), source.arrayOffset() + source.readerIndex(), compressedLen);
+                source.skipBytes(compressedLen);
+            } else {
+                // Inflater only takes arrays before Java 11
+                byte[] compressed = new byte[compressedLen];
+                in.readBytes(compressed);
+                inflater.setInput(compressed);
+            }
+
+            if (retainPayload && source != null) {
+                target = source.alloc().heapBuffer(uncompressedLen, uncompressedLen);
+                inflate(inflater, target.array(), target.arrayOffset(), uncompressedLen);
+                target.writerIndex(uncompressedLen);
+                cmd.payloadBuffer(target);
+                target = null;
+            } else {
+                byte[] payload = new byte[uncompressedLen];
+                inflate(inflater, payload, 0, uncompressedLen);
+                cmd.payload(payload);
+            }
+            cmd.compressed(true);
+        } finally {
+            if (target != null) {
+                target.release();
+            }
+            if (context != null) {
+                inflater.reset();
+            } else {
+                inflater.end();
+            }
+        }
+    }
+
+    private static void inflate(final Inflater inflater, final byte[] dst, final int offset, final int length) {
+        try {
+            int n = 0;
+            while (n < length) {
+                int inflated = inflater.inflate(dst, offset + n, length - n);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != length || !inflater.finished()) {
+                throw new RemotingCodecException(String.format("Compressed payload inflates to %d bytes, expect %d", n, length));
+            }
+        } catch (DataFormatException e) {
+            throw new RemotingCodecException("Compressed payload is corrupted", e);
+        }
+    }
+
+    private static int checkPropertiesLen(final int propsLen) {
+        // propsLen overflows to negative with a forged varint
+        if (propsLen < 0 || propsLen > PROPERTY_MAX_LEN) {
+            throw new RemotingCodecException(String.format("Properties total len: %d over max limit: %d", propsLen, PROPERTY_MAX_LEN));
+        }
+        return propsLen;
+    }
+
+    public static int varIntSize(final int value) {
+        if ((value & (0xFFFFFFFF << 7)) == 0) {
+            return 1;
+        }
+        if ((value & (0xFFFFFFFF << 14)) == 0) {
+            return 2;
+        }
+        if ((value & (0xFFFFFFFF << 21)) == 0) {
+            return 3;
+        }
+        if ((value & (0xFFFFFFFF << 28)) == 0) {
+            return 4;
+        }
+        return 5;
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint, 7 bits per byte with the high bit set on all but the last byte.
+     */
+    public static void writeVarInt(int value, final RemotingBuffer out) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((byte) value);
+    }
+
+    static int readVarInt(final RemotingBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new RemotingCodecException("Malformed varint");
+    }
+
+    /**
+     * Reads a varint written from an unsigned short, larger values are rejected instead of truncated.
+     */
+    private static short readVarShort(final RemotingBuffer in, final String field) {
+        int value = readVarInt(in);
+        if (value < 0 || value > 0xFFFF) {
+            throw new RemotingCodecException(String.format("%s: %d over max limit: %d", field, value, 0xFFFF));
+        }
+        return (short) value;
+    }
+
+    /**
+     * Reads the varint frame length of a v2 frame.
+     *
+     * @param in the buffer to read from
+     * @return the frame length, or -1 if the varint is not complete yet
+     */
+    public static int readFrameLength(final RemotingBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (in.readableBytes() == 0) {
+                return -1;
+            }
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0 || value > PACKET_MAX_LEN) {
+                    throw new RemotingCodecException(String.format("Frame length %d is more than limit %d", value, PACKET_MAX_LEN));
+                }
+                return value;
+            }
+        }
+        throw new RemotingCodecException("Malformed frame length");
     }
 
     public static byte[] encodePayload(Object object) {
@@ -203,4 +846,74 @@ public class CodecHelper {
         return KryoUtils.decode(buffer, type, classes);
     }
 
+
+    /**
+     * The pre-encoded variable parts of a frame and its exact length.
+     */
+    public static final class FrameLayout {
+        private final RemotingCommand command;
+        private final int version;
+        private final int flags;
+        private final int payloadLen;
+        private byte[] remark;
+        private byte[][] props;
+        // header, key length and value length per property, -1 when not written
+        private int[] propLens;
+        // The sending table when the properties are indexed
+        private PropertyTable table;
+        private int inserts;
+        private int tableCapacity;
+        private int propsLen;
+        private int bodyLength;
+        private int frameLength;
+
+        private FrameLayout(RemotingCommand command, int version, int flags, int payloadLen) {
+            this.command = command;
+            this.version = version;
+            this.flags = flags;
+            this.payloadLen = payloadLen;
+        }
+
+        private int remarkLength() {
+            return remark == null ? 0 : remark.length;
+        }
+
+        private int propertiesSize() {
+            if (propLens != null) {
+                return propLens.length / 3;
+            }
+            return props == null ? 0 : props.length;
+        }
+
+        public int version() {
+            return version;
+        }
+
+        public int flags() {
+            return flags;
+        }
+
+        public int frameLength() {
+            return frameLength;
+        }
+
+        /**
+         * @return the bytes written by {@link #encodeHeader(FrameLayout, RemotingBuffer)}, without the payload and
+         * the checksum trailer
+         */
+        public int headerLength() {
+            return frameLength - payloadLen - trailerLength();
+        }
+
+        /**
+         * @return {@link #CHECKSUM_LEN} when the frame ends with a checksum, the sender writes it after the payload
+         */
+        public int trailerLength() {
+            return (flags & FLAG_CHECKSUM) != 0 ? CHECKSUM_LEN : 0;
+        }
+
+        public int payloadLength() {
+            return payloadLen;
+        }
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.remoting.impl.command;
+
+import link.thingscloud.netty.remoting.api.exception.RemotingCodecException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-connection dynamic table of property pairs, in the spirit of HPACK. Entries are addressed relative to the
+ * newest one (index 0) and evicted oldest first once the table is full. The sending side keeps lookup maps to find
+ * the index of a known pair or key, the receiving side only needs the ring.
+ * <p>
+ * The sending side stages the inserts of a frame while laying it out and commits them once the frame header has
+ * been encoded, so a frame which is never written leaves the table as the peer knows it. Lookups account for the
+ * staged inserts, which the peer applies before it reads the entries after them.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public class PropertyTable {
+    /**
+     * Upper bound of the table capacity a peer may announce.
+     */
+    public static final int MAX_CAPACITY = 4096;
+    /**
+     * Pairs with a longer key plus value are never inserted.
+     */
+    public static final int MAX_ENTRY_LEN = 1024;
+
+    private final int capacity;
+    private final String[] keys;
+    private final String[] values;
+    private long insertCount;
+
+    private final Map<String, Map<String, Long>> pairIndex;
+    private final Map<String, Long> keyIndex;
+    private final Map<String, String> lastLiterals;
+    private final List<String> staged;
+    private boolean announced;
+    private boolean announceStaged;
+
+    private PropertyTable(int capacity, boolean indexed) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new RemotingCodecException(String.format("Property table capacity: %d out of range (0, %d]", capacity, MAX_CAPACITY));
+        }
+        this.capacity = capacity;
+        this.keys = new String[capacity];
+        this.values = new String[capacity];
+        this.pairIndex = indexed ? new HashMap<String, Map<String, Long>>() : null;
+        this.keyIndex = indexed ? new HashMap<String, Long>() : null;
+        this.lastLiterals = indexed ? new HashMap<String, String>() : null;
+        this.staged = indexed ? new ArrayList<String>() : null;
+    }
+
+    public static PropertyTable forEncoder(int capacity) {
+        return new PropertyTable(capacity, true);
+    }
+
+    public static PropertyTable forDecoder(int capacity) {
+        return new PropertyTable(capacity, false);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return (int) Math.min(insertCount, capacity);
+    }
+
+    public String key(int index) {
+        return keys[slot(index)];
+    }
+
+    public String value(int index) {
+        return values[slot(index)];
+    }
+
+    /**
+     * @return true only the first time, the sending side announces the capacity before its first entry
+     */
+    boolean announce() {
+        if (announced || announceStaged) {
+            return false;
+        }
+        announceStaged = true;
+        return true;
+    }
+
+    /**
+     * @return the relative index of the pair once the staged inserts are applied, or -1 if it is not in the table
+     */
+    int indexOf(String key, String value) {
+        Map<String, Long> pairs = pairIndex.get(key);
+        if (pairs == null) {
+            return -1;
+        }
+        return stagedIndex(pairs.get(value));
+    }
+
+    /**
+     * @return the relative index of the newest pair with the key once the staged inserts are applied, or -1 if
+     * there is none
+     */
+    int indexOfKey(String key) {
+        return stagedIndex(keyIndex.get(key));
+    }
+
+    private int stagedIndex(Long seq) {
+        if (seq == null) {
+            return -1;
+        }
+        // The staged inserts push the entry further back, or evict it
+        long index = insertCount - 1 - seq + staged.size() / 2;
+        return index < capacity ? (int) index : -1;
+    }
+
+    /**
+     * Decides whether a pair which is not in the table yet is worth inserting: the first value of a key is, a
+     * further value only once it has been sent twice in a row, so per-request values like trace ids do not churn
+     * the table.
+     */
+    boolean shouldInsert(String key, String value, int entryLen) {
+        if (entryLen > MAX_ENTRY_LEN) {
+            return false;
+        }
+        if (!keyIndex.containsKey(key)) {
+            return true;
+        }
+        if (value.equals(lastLiterals.get(key))) {
+            lastLiterals.remove(key);
+            return true;
+        }
+        if (lastLiterals.size() >= capacity) {
+            lastLiterals.clear();
+        }
+        lastLiterals.put(key, value);
+        return false;
+    }
+
+    void stage(String key, String value) {
+        staged.add(key);
+        staged.add(value);
+    }
+
+    /**
+     * Applies the announcement and the oldest staged inserts, those of the frame whose header has been encoded.
+     *
+     * @param announce the frame announced the capacity
+     * @param inserts  the number of inserts staged by the frame
+     */
+    void commit(boolean announce, int inserts) {
+        if (announce) {
+            announced = true;
+            announceStaged = false;
+        }
+        for (int i = 0; i < inserts; i++) {
+            insert(staged.get(2 * i), staged.get(2 * i + 1));
+        }
+        staged.subList(0, 2 * inserts).clear();
+    }
+
+    /**
+     * Drops what the frames which have not been encoded staged, called once the outbound command is done with.
+     */
+    public void rollback() {
+        if (staged != null) {
+            staged.clear();
+        }
+        announceStaged = false;
+    }
+
+    void insert(String key, String value) {
+        int slot = (int) (insertCount % capacity);
+        if (pairIndex != null) {
+            if (insertCount >= capacity) {
+                evict(keys[slot], values[slot], insertCount - capacity);
+            }
+            Long seq = insertCount;
+            Map<String, Long> pairs = pairIndex.get(key);
+            if (pairs == null) {
+                pairs = new HashMap<>(4);
+                pairIndex.put(key, pairs);
+            }
+            pairs.put(value, seq);
+            keyIndex.put(key, seq);
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        insertCount++;
+    }
+
+    private void evict(String key, String value, long seq) {
+        Map<String, Long> pairs = pairIndex.get(key);
+        if (pairs == null) {
+            return;
+        }
+        Long current = pairs.get(value);
+        if (current != null && current == seq) {
+            pairs.remove(value);
+        }
+        if (pairs.isEmpty()) {
+            pairIndex.remove(key);
+            keyIndex.remove(key);
+            return;
+        }
+        Long latest = keyIndex.get(key);
+        if (latest != null && latest == seq) {
+            long newest = -1;
+            for (Long remaining : pairs.values()) {
+                newest = Math.max(newest, remaining);
+            }
+            keyIndex.put(key, newest);
+        }
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= size()) {
+            throw new RemotingCodecException(String.format("Property table index: %d out of range [0, %d)", index, size()));
+        }
+        return (int) ((insertCount - 1 - index) % capacity);
+    }
+}
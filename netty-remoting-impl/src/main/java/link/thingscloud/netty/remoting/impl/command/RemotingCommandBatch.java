@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.remoting.impl.command;
+
+import link.thingscloud.netty.remoting.api.command.RemotingCommand;
+import link.thingscloud.netty.remoting.api.command.TrafficType;
+import org.apache.commons.lang3.builder.ToStringExclude;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Commands sent in one frame of {@link TrafficType#BATCH}, the encoder packs their frames into its payload.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public class RemotingCommandBatch extends RemotingCommandImpl {
+    @ToStringExclude
+    private final List<RemotingCommand> commands = new ArrayList<>();
+
+    public RemotingCommandBatch() {
+        trafficType(TrafficType.BATCH);
+    }
+
+    public void add(RemotingCommand command) {
+        commands.add(command);
+    }
+
+    public List<RemotingCommand> commands() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    public int size() {
+        return commands.size();
+    }
+}
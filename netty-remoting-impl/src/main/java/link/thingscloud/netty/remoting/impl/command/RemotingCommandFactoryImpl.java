@@ -42,7 +42,7 @@ public class RemotingCommandFactoryImpl implements RemotingCommandFactory {
         response.cmdVersion(request.cmdVersion());
         response.requestID(request.requestID());
         response.trafficType(TrafficType.RESPONSE);
-        response.serializableType(request.serializableType());
+        response.serializableTypeId(request.serializableTypeId());
         return response;
     }
 }
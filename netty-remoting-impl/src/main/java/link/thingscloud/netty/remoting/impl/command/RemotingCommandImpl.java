@@ -17,12 +17,16 @@
 
 package link.thingscloud.netty.remoting.impl.command;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import link.thingscloud.netty.remoting.api.command.LanguageCode;
 import link.thingscloud.netty.remoting.api.command.RemotingCommand;
 import link.thingscloud.netty.remoting.api.command.SerializableType;
 import link.thingscloud.netty.remoting.api.command.TrafficType;
 import org.apache.commons.lang3.builder.*;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -40,7 +44,7 @@ public class RemotingCommandImpl implements RemotingCommand {
     private short cmdVersion;
     private volatile int requestId = REQUEST_ID_GENERATOR.incrementAndGet();
     private TrafficType trafficType = TrafficType.REQUEST_SYNC;
-    private SerializableType serializableType = SerializableType.JSON;
+    private int serializableTypeId = SerializableType.JSON.typeId();
     private short opCode = RemotingSysResponseCode.SUCCESS;
     private String remark = "";
 
@@ -50,6 +54,40 @@ public class RemotingCommandImpl implements RemotingCommand {
     @ToStringExclude
     private byte[] payload;
 
+    /**
+     * Retained slice of the inbound buffer, only set when the command was decoded in zero-copy mode.
+     */
+    @EqualsExclude
+    @HashCodeExclude
+    @ToStringExclude
+    private ByteBuf payloadBuffer;
+
+    /**
+     * Serialized on encoding, takes the place of the byte payload while set.
+     */
+    @ToStringExclude
+    private Object payloadObject;
+
+    /**
+     * Payload object serialized by {@link #payload()}, dropped whenever the object or its type changes.
+     */
+    @EqualsExclude
+    @HashCodeExclude
+    @ToStringExclude
+    private byte[] payloadObjectBytes;
+
+    /**
+     * Payload deserialized by {@link #payloadAs(Class)}, dropped whenever the payload or its type changes.
+     */
+    @EqualsExclude
+    @HashCodeExclude
+    @ToStringExclude
+    private Object payloadCache;
+
+    @EqualsExclude
+    @HashCodeExclude
+    private boolean compressed;
+
     protected RemotingCommandImpl() {
     }
 
@@ -105,12 +143,26 @@ public class RemotingCommandImpl implements RemotingCommand {
 
     @Override
     public SerializableType serializableType() {
-        return serializableType;
+        return SerializableType.of(serializableTypeId);
     }
 
     @Override
     public void serializableType(SerializableType value) {
-        this.serializableType = value;
+        this.serializableTypeId = value.typeId();
+        this.payloadCache = null;
+        this.payloadObjectBytes = null;
+    }
+
+    @Override
+    public int serializableTypeId() {
+        return serializableTypeId;
+    }
+
+    @Override
+    public void serializableTypeId(int typeId) {
+        this.serializableTypeId = typeId;
+        this.payloadCache = null;
+        this.payloadObjectBytes = null;
     }
 
     @Override
@@ -150,22 +202,135 @@ public class RemotingCommandImpl implements RemotingCommand {
 
     @Override
     public byte[] payload() {
+        if (this.payloadObject != null) {
+            if (this.payloadObjectBytes == null) {
+                this.payloadObjectBytes = SerializableHelper.serialize(this.serializableTypeId, this.payloadObject);
+            }
+            return this.payloadObjectBytes;
+        }
+        if (this.payload == null && this.payloadBuffer != null) {
+            this.payload = ByteBufUtil.getBytes(this.payloadBuffer);
+        }
         return this.payload;
     }
 
     @Override
     public void payload(byte[] payload) {
+        release();
+        this.payloadObject = null;
+        this.payloadObjectBytes = null;
+        this.payloadCache = null;
         this.payload = payload;
     }
 
+    @Override
+    public Object payloadObject() {
+        return this.payloadObject;
+    }
+
+    @Override
+    public void payloadObject(Object payloadObject) {
+        release();
+        this.payload = null;
+        this.payloadCache = null;
+        this.payloadObjectBytes = null;
+        this.payloadObject = payloadObject;
+    }
+
+    @Override
+    public <T> T payloadAs(Class<T> classOfT) {
+        if (this.payloadObject != null) {
+            return classOfT.cast(this.payloadObject);
+        }
+        if (classOfT.isInstance(this.payloadCache)) {
+            return classOfT.cast(this.payloadCache);
+        }
+        T value;
+        if (this.payload == null && this.payloadBuffer != null) {
+            value = SerializableHelper.deserialize(this.serializableTypeId, this.payloadBuffer, classOfT);
+        } else if (this.payload != null) {
+            value = SerializableHelper.deserialize(this.serializableTypeId, this.payload, classOfT);
+        } else {
+            return null;
+        }
+        this.payloadCache = value;
+        return value;
+    }
+
+    @Override
+    public boolean compressed() {
+        return this.compressed;
+    }
+
+    @Override
+    public void compressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public ByteBuf payloadBuffer() {
+        return this.payloadBuffer;
+    }
+
+    void payloadBuffer(ByteBuf payloadBuffer) {
+        this.payload = null;
+        this.payloadCache = null;
+        this.payloadBuffer = payloadBuffer;
+    }
+
+    /**
+     * Releases the retained payload buffer, if any. A payload which was not copied out before will be lost.
+     *
+     * @return true if a buffer was released
+     */
+    public boolean release() {
+        ByteBuf buffer = this.payloadBuffer;
+        if (buffer == null) {
+            return false;
+        }
+        this.payloadBuffer = null;
+        return buffer.release();
+    }
+
     @Override
     public int hashCode() {
-        return HashCodeBuilder.reflectionHashCode(this);
+        return new HashCodeBuilder()
+                .append(HashCodeBuilder.reflectionHashCode(this, "payload"))
+                .append(payloadLength())
+                .toHashCode();
     }
 
     @Override
     public boolean equals(Object o) {
-        return EqualsBuilder.reflectionEquals(this, o);
+        if (!EqualsBuilder.reflectionEquals(this, o, "payload")) {
+            return false;
+        }
+        RemotingCommandImpl other = (RemotingCommandImpl) o;
+        if (this.payload != null && other.payload != null) {
+            return Arrays.equals(this.payload, other.payload);
+        }
+        ByteBuf payload = payloadView();
+        ByteBuf otherPayload = other.payloadView();
+        if (payload == null || otherPayload == null) {
+            return payload == otherPayload;
+        }
+        return ByteBufUtil.equals(payload, otherPayload);
+    }
+
+    /**
+     * The byte payload or the retained slice, without copying the slice out as {@link #payload()} does.
+     */
+    private ByteBuf payloadView() {
+        if (this.payload != null) {
+            return Unpooled.wrappedBuffer(this.payload);
+        }
+        return this.payloadBuffer;
+    }
+
+    private int payloadLength() {
+        if (this.payload != null) {
+            return this.payload.length;
+        }
+        return this.payloadBuffer == null ? -1 : this.payloadBuffer.readableBytes();
     }
 
     @Override
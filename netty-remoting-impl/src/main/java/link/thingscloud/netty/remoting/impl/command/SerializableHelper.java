@@ -18,30 +18,53 @@
 package link.thingscloud.netty.remoting.impl.command;
 
 import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONB;
+import com.alibaba.fastjson2.JSONWriter;
+import com.alibaba.fastjson2.SymbolTable;
 import com.caucho.hessian.io.Hessian2Input;
 import com.caucho.hessian.io.Hessian2Output;
 import com.caucho.hessian.io.SerializerFactory;
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
 import io.fury.Fury;
 import io.fury.config.Language;
+import io.fury.memory.MemoryBuffer;
+import io.fury.memory.MemoryUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
 import link.thingscloud.netty.remoting.api.command.SerializableType;
+import link.thingscloud.netty.remoting.api.command.Serializer;
 import link.thingscloud.netty.remoting.api.exception.RemotingSerializableException;
+import link.thingscloud.netty.remoting.internal.KryoBufferUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.lang.reflect.Field;
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
+ * Serializes payloads with the serializer registered under the type id of the command, in a flat table indexed
+ * by the id. The built-in {@link SerializableType}s are registered first, then the {@link Serializer}s found by
+ * {@link ServiceLoader}.
+ *
  * @author zhouhailin
  * @since 0.8.0
  */
 public class SerializableHelper {
+    private static final Logger LOG = LoggerFactory.getLogger(SerializableHelper.class);
 
-    private static final List<Class<?>> DEFAULT_REGISTER_CLASS = new ArrayList<>();
+    private static final CopyOnWriteArrayList<Class<?>> DEFAULT_REGISTER_CLASS = new CopyOnWriteArrayList<>();
 
     static {
         DEFAULT_REGISTER_CLASS.add(String.class);
@@ -60,209 +83,663 @@ public class SerializableHelper {
         DEFAULT_REGISTER_CLASS.add(java.util.TreeSet.class);
     }
 
+    private static volatile Serializer[] SERIALIZERS = new Serializer[SerializableType.MAX_TYPE_ID + 1];
+
+    static {
+        registerSerializer(new JSONSerializer());
+        registerSerializer(new KryoSerializer());
+        registerSerializer(new FurySerializer());
+        registerSerializer(new HessianSerializer());
+        registerSerializer(new JdkSerializer());
+        registerSerializer(new JSONBSerializer());
+        for (Serializer serializer : ServiceLoader.load(Serializer.class)) {
+            registerSerializer(serializer);
+        }
+    }
+
     private SerializableHelper() {
     }
 
+    /**
+     * Registers the class with Kryo and Fury right away, together with the classes of its fields, so it is not
+     * done on the first serialization. Call it in the same order on both sides, Kryo numbers classes as they are
+     * registered.
+     */
     public static void register(Class<?> clazz) {
-        if (DEFAULT_REGISTER_CLASS.contains(clazz)) {
-            return;
+        DEFAULT_REGISTER_CLASS.addIfAbsent(clazz);
+        KryoSerializer.tryRegister(clazz);
+        FurySerializer.tryRegister(clazz);
+    }
+
+    /**
+     * Registers the class and has Fury generate its serializer, which otherwise slows down the first request
+     * carrying it by milliseconds. The generated code is shared, so the Fury of every other thread only builds a
+     * cheap serializer instance on first use.
+     */
+    public static void warmUp(Class<?> clazz) {
+        register(clazz);
+        FurySerializer.warmUp(clazz);
+    }
+
+    /**
+     * Sets the symbols JSONB writes as table references instead of strings, usually field names. Both sides must
+     * use the same symbols in the same order, none by default.
+     * <p>
+     * The table is JVM-wide, it applies to every client and server in the process and outlives their stop. Set it
+     * before any JSONB payload is exchanged, call it without symbols to clear it.
+     */
+    public static void jsonbSymbols(String... symbols) {
+        JSONBSerializer.symbolTable = symbols == null || symbols.length == 0 ? null : JSONB.symbolTable(symbols);
+    }
+
+    /**
+     * Registers a serializer under its type id, replacing the one registered before.
+     */
+    public static synchronized void registerSerializer(Serializer serializer) {
+        int typeId = serializer.typeId();
+        if (typeId < 0 || typeId > SerializableType.MAX_TYPE_ID) {
+            throw new IllegalArgumentException("Serializer type id " + typeId + " is out of range");
+        }
+        Serializer[] serializers = SERIALIZERS.clone();
+        if (serializers[typeId] != null) {
+            LOG.warn("Serializer {} of type id {} is replaced by {}", serializers[typeId], typeId, serializer);
         }
-        DEFAULT_REGISTER_CLASS.add(clazz);
+        serializers[typeId] = serializer;
+        SERIALIZERS = serializers;
+    }
+
+    /**
+     * @return the serializer registered under the type id, or null
+     */
+    public static Serializer serializer(int typeId) {
+        return SERIALIZERS[typeId & SerializableType.MAX_TYPE_ID];
+    }
+
+    private static Serializer requireSerializer(int typeId) {
+        Serializer serializer = serializer(typeId);
+        if (serializer == null) {
+            throw new RemotingSerializableException("Serializer of type id " + typeId + " is not registered");
+        }
+        return serializer;
     }
 
     public static byte[] serialize(SerializableType serializableType, final Object obj) {
+        return serialize(serializableType.typeId(), obj);
+    }
+
+    public static byte[] serialize(int typeId, final Object obj) {
         if (obj == null) {
             return null;
         }
-        switch (serializableType) {
-            case JSON:
-                return JSONSerializer.serialize(obj);
-            case Kryo:
-                return KryoSerializer.serialize(obj);
-            case Fury:
-                return FurySerializer.serialize(obj);
-            case Hessian:
-                return HessianSerializer.serialize(obj);
-            case Jdk:
-                return JdkSerializer.serialize(obj);
-            default:
-                return null;
+        return requireSerializer(typeId).serialize(obj);
+    }
+
+    /**
+     * Serializes the object straight into the buffer, appending at its writer index.
+     */
+    public static void serialize(SerializableType serializableType, final Object obj, final ByteBuf out) {
+        serialize(serializableType.typeId(), obj, out);
+    }
+
+    public static void serialize(int typeId, final Object obj, final ByteBuf out) {
+        if (obj == null) {
+            return;
+        }
+        Serializer serializer = requireSerializer(typeId);
+        if (serializer instanceof ByteBufSerializer) {
+            ((ByteBufSerializer) serializer).serialize(obj, out);
+        } else {
+            out.writeBytes(serializer.serialize(obj));
         }
     }
 
-    public static <T> T deserialize(SerializableType serializableType, byte[] data, Class<T> classOfT) {
-        switch (serializableType) {
-            case JSON:
-                return JSONSerializer.deserialize(data, classOfT);
-            case Kryo:
-                return KryoSerializer.deserialize(data, classOfT);
-            case Fury:
-                return FurySerializer.deserialize(data, classOfT);
-            case Hessian:
-                return HessianSerializer.deserialize(data, classOfT);
-            case Jdk:
-                return JdkSerializer.deserialize(data, classOfT);
-            default:
-                return null;
+    /**
+     * Deserializes the readable bytes of the buffer, its reader index is left untouched.
+     */
+    public static <T> T deserialize(SerializableType serializableType, final ByteBuf in, Class<T> classOfT) {
+        return deserialize(serializableType.typeId(), in, classOfT);
+    }
+
+    public static <T> T deserialize(int typeId, final ByteBuf in, Class<T> classOfT) {
+        Serializer serializer = requireSerializer(typeId);
+        if (serializer instanceof ByteBufSerializer) {
+            return ((ByteBufSerializer) serializer).deserialize(in.duplicate(), classOfT);
         }
+        return serializer.deserialize(ByteBufUtil.getBytes(in), classOfT);
+    }
+
+    public static <T> T deserialize(SerializableType serializableType, byte[] data, Class<T> classOfT) {
+        return deserialize(serializableType.typeId(), data, classOfT);
+    }
+
+    public static <T> T deserialize(int typeId, byte[] data, Class<T> classOfT) {
+        return requireSerializer(typeId).deserialize(data, classOfT);
     }
 
     /**
      * <a href="https://github.com/alibaba/fastjson2">Wiki</a>
      */
-    static class JSONSerializer {
+    static class JSONSerializer implements ByteBufSerializer {
+
+        @Override
+        public int typeId() {
+            return SerializableType.JSON.typeId();
+        }
 
-        public static byte[] serialize(Object obj) {
+        @Override
+        public byte[] serialize(Object obj) {
             return JSON.toJSONBytes(obj);
         }
 
-        public static <T> T deserialize(byte[] data, Class<T> classOfT) {
+        @Override
+        public <T> T deserialize(byte[] data, Class<T> classOfT) {
             return JSON.parseObject(data, classOfT);
         }
+
+        @Override
+        public void serialize(Object obj, ByteBuf out) {
+            JSON.writeTo(new ByteBufOutputStream(out), obj);
+        }
+
+        @Override
+        public <T> T deserialize(ByteBuf in, Class<T> classOfT) {
+            if (in.hasArray()) {
+                return JSON.parseObject(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes(), classOfT);
+            }
+            return JSON.parseObject(new ByteBufInputStream(in), classOfT);
+        }
     }
 
 
+    /**
+     * <a href="https://github.com/alibaba/fastjson2/blob/main/docs/jsonb_format_cn.md">Wiki</a>
+     */
+    static class JSONBSerializer implements ByteBufSerializer {
+
+        static volatile SymbolTable symbolTable;
+
+        @Override
+        public int typeId() {
+            return SerializableType.JSONB.typeId();
+        }
+
+        @Override
+        public byte[] serialize(Object obj) {
+            SymbolTable symbolTable = JSONBSerializer.symbolTable;
+            return symbolTable == null ? JSONB.toBytes(obj) : JSONB.toBytes(obj, symbolTable);
+        }
+
+        @Override
+        public <T> T deserialize(byte[] data, Class<T> classOfT) {
+            return deserialize(data, 0, data.length, classOfT);
+        }
+
+        private static <T> T deserialize(byte[] data, int offset, int length, Class<T> classOfT) {
+            SymbolTable symbolTable = JSONBSerializer.symbolTable;
+            return symbolTable == null
+                    ? JSONB.parseObject(data, offset, length, classOfT)
+                    : JSONB.parseObject(data, offset, length, classOfT, symbolTable);
+        }
+
+        /**
+         * Flushes the writer into the buffer. The JSONB writer always fills an array of its own first, flushing
+         * copies it over once, but no intermediate byte array is made.
+         */
+        @Override
+        public void serialize(Object obj, ByteBuf out) {
+            SymbolTable symbolTable = JSONBSerializer.symbolTable;
+            if (symbolTable == null) {
+                JSONB.writeTo(new ByteBufOutputStream(out), obj);
+                return;
+            }
+            try (JSONWriter writer = JSONWriter.ofJSONB(symbolTable)) {
+                writer.setRootObject(obj);
+                writer.getObjectWriter(obj.getClass(), obj.getClass()).writeJSONB(writer, obj, null, null, 0);
+                writer.flushTo(new ByteBufOutputStream(out));
+            } catch (IOException e) {
+                throw new RemotingSerializableException("JSONB serialize failed", e);
+            }
+        }
+
+        @Override
+        public <T> T deserialize(ByteBuf in, Class<T> classOfT) {
+            if (in.hasArray()) {
+                return deserialize(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes(), classOfT);
+            }
+            return deserialize(ByteBufUtil.getBytes(in), classOfT);
+        }
+    }
+
     /**
      * <a href="https://github.com/EsotericSoftware/kryo">Wiki</a>
      */
-    static class KryoSerializer {
+    static class KryoSerializer implements ByteBufSerializer {
 
-        static final Kryo KRYO = new Kryo();
-        static final List<Class<?>> KRYO_REGISTER = new ArrayList<>();
+        @Override
+        public int typeId() {
+            return SerializableType.Kryo.typeId();
+        }
 
-        private static void tryRegister(Class<?> clazz) {
-            try {
-                if (KRYO_REGISTER.contains(clazz)) {
-                    return;
-                }
-                KRYO_REGISTER.add(clazz);
-                KRYO.register(clazz);
+        /**
+         * Registration order shared by every pooled Kryo, so class ids match across instances.
+         */
+        static final List<Class<?>> KRYO_REGISTER = new CopyOnWriteArrayList<>();
 
-                for (Class<?> clazz0 : DEFAULT_REGISTER_CLASS) {
-                    tryRegister(clazz0);
+        static final Pool<PooledKryo> KRYO_POOL = new Pool<PooledKryo>(true, false, KryoBufferUtils.POOL_CAPACITY) {
+            @Override
+            protected PooledKryo create() {
+                return new PooledKryo();
+            }
+        };
+
+        static final class PooledKryo {
+            final Kryo kryo = new Kryo();
+            int registered;
+
+            Kryo sync() {
+                int size = KRYO_REGISTER.size();
+                while (registered < size) {
+                    kryo.register(KRYO_REGISTER.get(registered++));
                 }
-                for (Field field : FieldUtils.getAllFields(clazz)) {
-                    Class<?> type = field.getType();
-                    if (type.isPrimitive() && DEFAULT_REGISTER_CLASS.contains(type)) {
-                        continue;
+                return kryo;
+            }
+        }
+
+        /**
+         * Classes walked by {@link #collect(Class)}, guarded by {@link #KRYO_REGISTER}.
+         */
+        static final Set<Class<?>> KRYO_COLLECTED = new HashSet<>();
+
+        /**
+         * Registers a class and its field types on first sight, later checks are a single lookup.
+         */
+        static final ClassValue<Boolean> KRYO_CLASSES = new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                synchronized (KRYO_REGISTER) {
+                    try {
+                        collect(type);
+                    } catch (Exception e) {
+                        throw new RemotingSerializableException("Kryo register failed", e);
                     }
-                    tryRegister(type);
                 }
-            } catch (Exception e) {
-                throw new RemotingSerializableException("Kryo register failed", e);
+                return Boolean.TRUE;
             }
+        };
+
+        static void tryRegister(Class<?> clazz) {
+            KRYO_CLASSES.get(clazz);
         }
 
-        public static byte[] serialize(Object obj) {
-//            Kryo kryo = new Kryo();
+        private static void collect(Class<?> clazz) {
+            if (!KRYO_COLLECTED.add(clazz)) {
+                return;
+            }
+            KRYO_REGISTER.add(clazz);
+
+            for (Class<?> clazz0 : DEFAULT_REGISTER_CLASS) {
+                collect(clazz0);
+            }
+            for (Field field : FieldUtils.getAllFields(clazz)) {
+                Class<?> type = field.getType();
+                if (type.isPrimitive() && DEFAULT_REGISTER_CLASS.contains(type)) {
+                    continue;
+                }
+                collect(type);
+            }
+        }
+
+        @Override
+        public byte[] serialize(Object obj) {
             tryRegister(obj.getClass());
-            byte[] buffer = new byte[1024];
-            KRYO.writeClassAndObject(new Output(buffer), obj);
-            return buffer;
+            PooledKryo kryo = KRYO_POOL.obtain();
+            Output output = KryoBufferUtils.obtainOutput();
+            try {
+                kryo.sync().writeClassAndObject(output, obj);
+                return output.toBytes();
+            } finally {
+                KRYO_POOL.free(kryo);
+                KryoBufferUtils.freeOutput(output);
+            }
         }
 
-        public static <T> T deserialize(byte[] data, Class<T> classOfT) {
-//            Kryo kryo = new Kryo();
+        @Override
+        public <T> T deserialize(byte[] data, Class<T> classOfT) {
+            return deserialize(data, 0, data.length, classOfT);
+        }
+
+        private static <T> T deserialize(byte[] data, int offset, int length, Class<T> classOfT) {
             tryRegister(classOfT);
-            return (T) KRYO.readClassAndObject(new Input(data));
+            PooledKryo kryo = KRYO_POOL.obtain();
+            Input input = KryoBufferUtils.obtainInput();
+            try {
+                input.setBuffer(data, offset, length);
+                return (T) kryo.sync().readClassAndObject(input);
+            } finally {
+                KRYO_POOL.free(kryo);
+                KryoBufferUtils.freeInput(input);
+            }
+        }
+
+        /**
+         * Writes through a pooled output, which flushes into the buffer whenever it fills up.
+         */
+        @Override
+        public void serialize(Object obj, ByteBuf out) {
+            tryRegister(obj.getClass());
+            PooledKryo kryo = KRYO_POOL.obtain();
+            Output output = KryoBufferUtils.obtainOutput();
+            try {
+                output.setOutputStream(new ByteBufOutputStream(out));
+                kryo.sync().writeClassAndObject(output, obj);
+                output.flush();
+            } finally {
+                KRYO_POOL.free(kryo);
+                KryoBufferUtils.freeOutput(output);
+            }
+        }
+
+        @Override
+        public <T> T deserialize(ByteBuf in, Class<T> classOfT) {
+            if (in.hasArray()) {
+                return deserialize(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes(), classOfT);
+            }
+            tryRegister(classOfT);
+            PooledKryo kryo = KRYO_POOL.obtain();
+            try {
+                return (T) kryo.sync().readClassAndObject(new ByteBufferInput(in.nioBuffer()));
+            } finally {
+                KRYO_POOL.free(kryo);
+            }
         }
     }
 
     /**
      * <a href="https://github.com/alipay/fury">Wiki</a>
      */
-    static class FurySerializer {
+    static class FurySerializer implements ByteBufSerializer {
 
-        static final Fury FURY = Fury.builder().withLanguage(Language.JAVA).build();
-        static final List<Class<?>> FURY_REGISTER = new ArrayList<>();
+        @Override
+        public int typeId() {
+            return SerializableType.Fury.typeId();
+        }
 
-        private static void tryRegister(Class<?> clazz) {
-            try {
-                if (FURY_REGISTER.contains(clazz)) {
-                    return;
-                }
-                FURY_REGISTER.add(clazz);
-                FURY.register(clazz);
-                for (Class<?> clazz0 : DEFAULT_REGISTER_CLASS) {
-                    tryRegister(clazz0);
+        /**
+         * Registration order shared by every Fury instance, so class ids match across instances.
+         */
+        static final List<Class<?>> FURY_REGISTER = new CopyOnWriteArrayList<>();
+
+        /**
+         * Fury is not thread-safe, every thread serializes with an instance of its own, the Encoders of all event
+         * loops included.
+         */
+        static final ThreadLocal<ThreadFury> FURY = new ThreadLocal<ThreadFury>() {
+            @Override
+            protected ThreadFury initialValue() {
+                return new ThreadFury();
+            }
+        };
+
+        /**
+         * Minimum room made in the target buffer before Fury writes into it.
+         */
+        static final int MIN_WRITABLE_BYTES = 256;
+
+        static final class ThreadFury {
+            final Fury fury = Fury.builder().withLanguage(Language.JAVA).build();
+            int registered;
+
+            Fury sync() {
+                int size = FURY_REGISTER.size();
+                while (registered < size) {
+                    fury.register(FURY_REGISTER.get(registered++));
                 }
-                for (Field field : FieldUtils.getAllFields(clazz)) {
-                    Class<?> type = field.getType();
-                    if (type.isPrimitive() && DEFAULT_REGISTER_CLASS.contains(type)) {
-                        continue;
+                return fury;
+            }
+        }
+
+        /**
+         * Classes walked by {@link #collect(Class)}, guarded by {@link #FURY_REGISTER}.
+         */
+        static final Set<Class<?>> FURY_COLLECTED = new HashSet<>();
+
+        /**
+         * Registers a class and its field types on first sight, later checks are a single lookup.
+         */
+        static final ClassValue<Boolean> FURY_CLASSES = new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                synchronized (FURY_REGISTER) {
+                    try {
+                        collect(type);
+                    } catch (Exception e) {
+                        throw new RemotingSerializableException("Fury register failed", e);
                     }
-                    tryRegister(type);
                 }
-            } catch (Exception e) {
-                throw new RemotingSerializableException("Fury register failed", e);
+                return Boolean.TRUE;
             }
+        };
+
+        static void tryRegister(Class<?> clazz) {
+            FURY_CLASSES.get(clazz);
+        }
+
+        /**
+         * Generates the serializer with the Fury of the calling thread, the generated code is shared by the others.
+         */
+        static void warmUp(Class<?> clazz) {
+            FURY.get().sync().getClassResolver().getSerializer(clazz);
         }
 
-        public static byte[] serialize(Object obj) {
+        private static void collect(Class<?> clazz) {
+            if (!FURY_COLLECTED.add(clazz)) {
+                return;
+            }
+            FURY_REGISTER.add(clazz);
+            for (Class<?> clazz0 : DEFAULT_REGISTER_CLASS) {
+                collect(clazz0);
+            }
+            for (Field field : FieldUtils.getAllFields(clazz)) {
+                Class<?> type = field.getType();
+                if (type.isPrimitive() && DEFAULT_REGISTER_CLASS.contains(type)) {
+                    continue;
+                }
+                collect(type);
+            }
+        }
+
+        @Override
+        public byte[] serialize(Object obj) {
             tryRegister(obj.getClass());
-            return FURY.serialize(obj);
+            return FURY.get().sync().serialize(obj);
         }
 
-        public static <T> T deserialize(byte[] data, Class<T> classOfT) {
+        @Override
+        public <T> T deserialize(byte[] data, Class<T> classOfT) {
             tryRegister(classOfT);
-            return (T) FURY.deserialize(data);
+            return (T) FURY.get().sync().deserialize(data);
+        }
+
+        /**
+         * Writes straight into the writable bytes of the buffer. Fury cannot grow a buffer it does not own, when
+         * the object does not fit it moves the output to an array of its own, which is copied over once.
+         */
+        @Override
+        public void serialize(Object obj, ByteBuf out) {
+            tryRegister(obj.getClass());
+            Fury fury = FURY.get().sync();
+            out.ensureWritable(MIN_WRITABLE_BYTES);
+            int writerIndex = out.writerIndex();
+            MemoryBuffer buffer;
+            if (out.hasArray()) {
+                buffer = MemoryBuffer.fromByteArray(out.array(), out.arrayOffset() + writerIndex, out.writableBytes());
+            } else if (out.nioBufferCount() == 1) {
+                buffer = MemoryBuffer.fromByteBuffer(out.nioBuffer(writerIndex, out.writableBytes()));
+            } else {
+                out.writeBytes(fury.serialize(obj));
+                return;
+            }
+            boolean offHeap = buffer.isOffHeap();
+            byte[] array = buffer.getHeapMemory();
+            fury.serialize(buffer, obj);
+            if (buffer.isOffHeap() == offHeap && buffer.getHeapMemory() == array) {
+                out.writerIndex(writerIndex + buffer.writerIndex());
+            } else {
+                out.writeBytes(buffer.getHeapMemory(), 0, buffer.writerIndex());
+            }
+        }
+
+        @Override
+        public <T> T deserialize(ByteBuf in, Class<T> classOfT) {
+            tryRegister(classOfT);
+            return (T) FURY.get().sync().deserialize(MemoryUtils.wrap(in.nioBuffer()));
         }
     }
 
     /**
      * <a href="https://github.com/sofastack/sofa-hessian/wiki/UserGuide">Wiki</a>
      */
-    static class HessianSerializer {
+    static class HessianSerializer implements ByteBufSerializer {
+
+        @Override
+        public int typeId() {
+            return SerializableType.Hessian.typeId();
+        }
 
         static final SerializerFactory SERIALIZER_FACTORY = new SerializerFactory();
 
-        public static byte[] serialize(Object obj) {
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            Hessian2Output hout = new Hessian2Output(bout);
-            hout.setSerializerFactory(SERIALIZER_FACTORY);
+        static final ThreadLocal<HessianStreams> STREAMS = new ThreadLocal<HessianStreams>() {
+            @Override
+            protected HessianStreams initialValue() {
+                return new HessianStreams();
+            }
+        };
+
+        /**
+         * Output streams of one thread, reset before each use. Their buffers and the serializer cache of the shared
+         * factory are what makes reuse pay off. Inputs are not reused, Hessian2Input keeps unread bytes and chunk
+         * state of a malformed payload across {@code init}, which would leak into the next payload.
+         */
+        static final class HessianStreams {
+            final Hessian2Output output = new Hessian2Output();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+            boolean inUse;
+
+            HessianStreams() {
+                output.setSerializerFactory(SERIALIZER_FACTORY);
+            }
+        }
+
+        static final int INITIAL_BUFFER_SIZE = 1024;
+        /**
+         * Byte streams grown past this size are dropped instead of kept by the thread.
+         */
+        static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+        @Override
+        public byte[] serialize(Object obj) {
+            HessianStreams streams = STREAMS.get();
+            if (streams.inUse) {
+                // Called from within a Hessian serializer of the same thread
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                serialize(obj, bout, new HessianStreams());
+                return bout.toByteArray();
+            }
+            ByteArrayOutputStream bout = streams.bytes;
+            bout.reset();
+            serialize(obj, bout, streams);
+            byte[] bytes = bout.toByteArray();
+            if (bytes.length > MAX_RETAINED_BUFFER_SIZE) {
+                STREAMS.remove();
+            }
+            return bytes;
+        }
+
+        @Override
+        public <T> T deserialize(byte[] data, Class<T> classOfT) {
+            return deserialize(new ByteArrayInputStream(data, 0, data.length), classOfT);
+        }
+
+        @Override
+        public void serialize(Object obj, ByteBuf out) {
+            HessianStreams streams = STREAMS.get();
+            serialize(obj, new ByteBufOutputStream(out), streams.inUse ? new HessianStreams() : streams);
+        }
+
+        @Override
+        public <T> T deserialize(ByteBuf in, Class<T> classOfT) {
+            return deserialize(new ByteBufInputStream(in), classOfT);
+        }
+
+        private static void serialize(Object obj, OutputStream os, HessianStreams streams) {
+            Hessian2Output hout = streams.output;
+            streams.inUse = true;
+            hout.init(os);
             try {
                 hout.writeObject(obj);
-                hout.close();
+                hout.flush();
             } catch (IOException e) {
                 throw new RemotingSerializableException("Hessian Serializer failed", e);
+            } finally {
+                hout.init(null);
+                streams.inUse = false;
             }
-            return bout.toByteArray();
         }
 
-        public static <T> T deserialize(byte[] data, Class<T> classOfT) {
-            ByteArrayInputStream bin = new ByteArrayInputStream(data, 0, data.length);
-            Hessian2Input hin = new Hessian2Input(bin);
-            hin.setSerializerFactory(new SerializerFactory());
-            Object out;
+        private static <T> T deserialize(InputStream is, Class<T> classOfT) {
+            Hessian2Input hin = new Hessian2Input(is);
+            hin.setSerializerFactory(SERIALIZER_FACTORY);
             try {
-                out = hin.readObject();
-                hin.close();
+                return (T) hin.readObject();
             } catch (IOException e) {
                 throw new RemotingSerializableException("Hessian Deserializer failed", e);
             }
-            return (T) out;
         }
     }
 
-    static class JdkSerializer {
+    static class JdkSerializer implements ByteBufSerializer {
+
+        @Override
+        public int typeId() {
+            return SerializableType.Jdk.typeId();
+        }
 
-        public static byte[] serialize(Object obj) {
+        @Override
+        public byte[] serialize(Object obj) {
             ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            serialize(obj, bout);
+            return bout.toByteArray();
+        }
+
+        @Override
+        public <T> T deserialize(byte[] data, Class<T> classOfT) {
+            return deserialize(new ByteArrayInputStream(data, 0, data.length), classOfT);
+        }
+
+        @Override
+        public void serialize(Object obj, ByteBuf out) {
+            serialize(obj, new ByteBufOutputStream(out));
+        }
+
+        @Override
+        public <T> T deserialize(ByteBuf in, Class<T> classOfT) {
+            return deserialize(new ByteBufInputStream(in), classOfT);
+        }
+
+        private static void serialize(Object obj, OutputStream os) {
             try {
-                ObjectOutputStream out = new ObjectOutputStream(bout);
+                ObjectOutputStream out = new ObjectOutputStream(os);
                 out.writeObject(obj);
                 out.close();
             } catch (IOException e) {
                 throw new RemotingSerializableException("Jdk Serializer failed", e);
             }
-            return bout.toByteArray();
         }
 
-        public static <T> T deserialize(byte[] data, Class<T> classOfT) {
-            ByteArrayInputStream bin = new ByteArrayInputStream(data, 0, data.length);
+        private static <T> T deserialize(InputStream is, Class<T> classOfT) {
             Object out;
             try {
-                ObjectInputStream in = new ObjectInputStream(bin);
+                ObjectInputStream in = new ObjectInputStream(is);
                 out = in.readObject();
                 in.close();
             } catch (IOException | ClassNotFoundException e) {
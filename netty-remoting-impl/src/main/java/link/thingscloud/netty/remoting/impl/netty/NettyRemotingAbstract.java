@@ -18,6 +18,11 @@
 package link.thingscloud.netty.remoting.impl.netty;
 
 import io.netty.channel.*;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import link.thingscloud.netty.remoting.api.AsyncHandler;
 import link.thingscloud.netty.remoting.api.RemotingEndPoint;
 import link.thingscloud.netty.remoting.api.RemotingService;
@@ -29,6 +34,7 @@ import link.thingscloud.netty.remoting.api.command.RemotingCommandFactory;
 import link.thingscloud.netty.remoting.api.command.TrafficType;
 import link.thingscloud.netty.remoting.api.exception.RemotingAccessException;
 import link.thingscloud.netty.remoting.api.exception.RemotingRuntimeException;
+import link.thingscloud.netty.remoting.api.exception.RemotingSerializableException;
 import link.thingscloud.netty.remoting.api.exception.RemotingTimeoutException;
 import link.thingscloud.netty.remoting.api.exception.SemaphoreExhaustedException;
 import link.thingscloud.netty.remoting.api.interceptor.Interceptor;
@@ -38,20 +44,25 @@ import link.thingscloud.netty.remoting.api.interceptor.ResponseContext;
 import link.thingscloud.netty.remoting.common.ChannelEventListenerGroup;
 import link.thingscloud.netty.remoting.common.Pair;
 import link.thingscloud.netty.remoting.common.ResponseFuture;
+import link.thingscloud.netty.remoting.common.ResponseTable;
 import link.thingscloud.netty.remoting.common.SemaphoreReleaseOnlyOnce;
 import link.thingscloud.netty.remoting.config.RemotingConfig;
 import link.thingscloud.netty.remoting.external.ThreadUtils;
 import link.thingscloud.netty.remoting.impl.channel.NettyChannelImpl;
 import link.thingscloud.netty.remoting.impl.command.RemotingCommandFactoryImpl;
+import link.thingscloud.netty.remoting.impl.command.RemotingCommandImpl;
 import link.thingscloud.netty.remoting.impl.command.RemotingSysResponseCode;
+import link.thingscloud.netty.remoting.impl.command.SerializableHelper;
 import link.thingscloud.netty.remoting.internal.RemotingUtil;
+import org.apache.commons.lang3.ClassUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.SocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 
 /**
@@ -64,6 +75,18 @@ public abstract class NettyRemotingAbstract implements RemotingService {
      */
     protected static final Logger LOG = LoggerFactory.getLogger(NettyRemotingAbstract.class);
 
+    /**
+     * One slot per unsigned request code.
+     */
+    private static final int PROCESSOR_TABLE_SIZE = 1 << 16;
+
+    private static final long TIMEOUT_TICK_MILLIS = 10;
+
+    /**
+     * The requests awaiting a response on a channel, failed at once when the channel closes.
+     */
+    private static final AttributeKey<Set<ResponseFuture>> IN_FLIGHT_REQUESTS_KEY = AttributeKey.valueOf("RemotingInFlightRequests");
+
     /**
      * Executor to feed netty events to user defined {@link ChannelEventListener}.
      */
@@ -82,13 +105,15 @@ public abstract class NettyRemotingAbstract implements RemotingService {
     /**
      * This map caches all on-going requests.
      */
-    private final Map<Integer, ResponseFuture> ackTables = new ConcurrentHashMap<Integer, ResponseFuture>(256);
+    private final ResponseTable ackTables = new ResponseTable();
 
     /**
-     * This container holds all processors per request code, aka, for each incoming request, we may look up the
-     * responding processor in this map to handle the request.
+     * This container holds all processors per request code, indexed by the unsigned code, aka, for each incoming
+     * request, we may look up the responding processor in this table to handle the request. It is copied on write,
+     * lookups read the published array without hashing or boxing.
      */
-    private final Map<Short, Pair<RequestProcessor, ExecutorService>> processorTables = new ConcurrentHashMap<>();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private volatile Pair<RequestProcessor, ExecutorService>[] processorTables = new Pair[PROCESSOR_TABLE_SIZE];
 
     /**
      * This factory provides methods to create RemotingCommand.
@@ -105,11 +130,25 @@ public abstract class NettyRemotingAbstract implements RemotingService {
      */
     private final ExecutorService asyncHandlerExecutor;
 
+    /**
+     * Payload classes registered with the serializers at start.
+     */
+    private final List<String> serializableClasses;
+    private final boolean serializableWarmUpAsync;
+    private volatile long serializableWarmUpMillis = -1;
+
     /**
      * This scheduled executor provides the ability to govern on-going response table.
      */
     protected ScheduledExecutorService houseKeepingService = ThreadUtils.newSingleThreadScheduledExecutor("HouseKeepingService", true);
 
+    /**
+     * Times out async requests one by one, a response cancels its timeout. The house keeping scan only catches
+     * what is left over.
+     */
+    private final HashedWheelTimer timeoutTimer = new HashedWheelTimer(
+            ThreadUtils.newGenericThreadFactory("RequestTimeoutTimer", true), TIMEOUT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+
     /**
      * Provides custom interceptor at the occurrence of beforeRequest and afterResponseReceived event.
      */
@@ -127,6 +166,8 @@ public abstract class NettyRemotingAbstract implements RemotingService {
 
         this.asyncHandlerExecutor = ThreadUtils.newFixedThreadPool(remotingConfig.getAsyncHandlerExecutorThreads(), 10000, "Remoting-AsyncExecutor", true);
         this.remotingCommandFactory = new RemotingCommandFactoryImpl();
+        this.serializableClasses = remotingConfig.getSerializableClasses();
+        this.serializableWarmUpAsync = remotingConfig.isSerializableWarmUpAsync();
     }
 
     protected void putNettyEvent(final NettyChannelEvent event) {
@@ -141,33 +182,25 @@ public abstract class NettyRemotingAbstract implements RemotingService {
             public void run() {
                 scanResponseTable();
             }
-        }, 3000, 1000, TimeUnit.MICROSECONDS);
+        }, 3000, 1000, TimeUnit.MILLISECONDS);
     }
 
     void scanResponseTable() {
-        final List<Integer> rList = new ArrayList<>();
-
-        for (final Map.Entry<Integer, ResponseFuture> next : this.ackTables.entrySet()) {
-            ResponseFuture responseFuture = next.getValue();
-
-            if ((responseFuture.getBeginTimestamp() + responseFuture.getTimeoutMillis()) <= System.currentTimeMillis()) {
-                rList.add(responseFuture.getRequestId());
-            }
+        for (ResponseFuture rf : this.ackTables.removeExpired(System.currentTimeMillis())) {
+            responseFutureRemoved(rf);
+            requestTimeout(rf);
         }
+    }
 
-        for (Integer requestID : rList) {
-            ResponseFuture rf = this.ackTables.remove(requestID);
-
-            if (rf != null) {
-                LOG.warn("Removes timeout request {} ", rf.getRequestCommand());
-                rf.setCause(new RemotingTimeoutException(String.format("Request to %s timeout", rf.getRemoteAddr()), rf.getTimeoutMillis()));
-                executeAsyncHandler(rf);
-            }
-        }
+    private void requestTimeout(final ResponseFuture rf) {
+        LOG.warn("Removes timeout request {} ", rf.getRequestCommand());
+        rf.setCause(new RemotingTimeoutException(String.format("Request to %s timeout", rf.getRemoteAddr()), rf.getTimeoutMillis()));
+        executeAsyncHandler(rf);
     }
 
     @Override
     public void start() {
+        warmUpSerializers();
         startUpHouseKeepingService();
 
         if (this.channelEventListenerGroup.size() > 0) {
@@ -175,9 +208,61 @@ public abstract class NettyRemotingAbstract implements RemotingService {
         }
     }
 
+    /**
+     * Registers the configured classes in order on the calling thread, only the Fury codegen may run in the
+     * background, so the Kryo and Fury class ids never depend on when the background task runs.
+     */
+    private void warmUpSerializers() {
+        if (serializableClasses == null || serializableClasses.isEmpty()) {
+            return;
+        }
+        final List<Class<?>> classes = new ArrayList<>(serializableClasses.size());
+        for (String className : serializableClasses) {
+            try {
+                classes.add(ClassUtils.getClass(className));
+            } catch (ClassNotFoundException e) {
+                throw new RemotingSerializableException("Serializable class " + className + " not found", e);
+            }
+        }
+        for (Class<?> clazz : classes) {
+            SerializableHelper.register(clazz);
+        }
+        if (!serializableWarmUpAsync) {
+            doWarmUpSerializers(classes);
+            return;
+        }
+        publicExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    doWarmUpSerializers(classes);
+                } catch (Exception e) {
+                    LOG.warn("Warm up serializers failed", e);
+                }
+            }
+        });
+    }
+
+    private void doWarmUpSerializers(List<Class<?>> classes) {
+        long start = System.nanoTime();
+        for (Class<?> clazz : classes) {
+            SerializableHelper.warmUp(clazz);
+        }
+        serializableWarmUpMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.info("Warmed up serializers of {} classes in {} ms", classes.size(), serializableWarmUpMillis);
+    }
+
+    /**
+     * @return how long warming up the serializers of the configured classes took, -1 until it is done
+     */
+    public long serializableWarmUpMillis() {
+        return serializableWarmUpMillis;
+    }
+
     @Override
     public void stop() {
         ThreadUtils.shutdownGracefully(houseKeepingService, 3000, TimeUnit.MILLISECONDS);
+        timeoutTimer.stop();
         ThreadUtils.shutdownGracefully(publicExecutor, 2000, TimeUnit.MILLISECONDS);
         ThreadUtils.shutdownGracefully(asyncHandlerExecutor, 2000, TimeUnit.MILLISECONDS);
         ThreadUtils.shutdownGracefully(channelEventExecutor);
@@ -202,13 +287,14 @@ public abstract class NettyRemotingAbstract implements RemotingService {
     }
 
     public void processRequestCommand(final ChannelHandlerContext ctx, final RemotingCommand cmd) {
-        Pair<RequestProcessor, ExecutorService> processorExecutorPair = this.processorTables.get(cmd.cmdCode());
+        Pair<RequestProcessor, ExecutorService> processorExecutorPair = this.processorTables[cmd.cmdCode() & 0xFFFF];
 
         if (processorExecutorPair == null) {
             final RemotingCommand response = commandFactory().createResponse(cmd);
             response.opCode(RemotingSysResponseCode.REQUEST_CODE_NOT_SUPPORTED);
             ctx.writeAndFlush(response);
             LOG.warn("The command code {} is NOT supported!", cmd.cmdCode());
+            releasePayload(cmd);
             return;
         }
 
@@ -228,11 +314,12 @@ public abstract class NettyRemotingAbstract implements RemotingService {
                 response.remark("SYSTEM_BUSY");
                 writeAndFlush(ctx.channel(), response);
             }
+            releasePayload(cmd);
         }
     }
 
     private void processResponseCommand(ChannelHandlerContext ctx, RemotingCommand response) {
-        final ResponseFuture responseFuture = ackTables.remove(response.requestID());
+        final ResponseFuture responseFuture = removeResponseFuture(response.requestID());
         if (responseFuture != null) {
             responseFuture.setResponseCommand(response);
             responseFuture.release();
@@ -243,11 +330,15 @@ public abstract class NettyRemotingAbstract implements RemotingService {
             if (responseFuture.getAsyncHandler() != null) {
                 executeAsyncHandler(responseFuture);
             } else {
+                // The sync caller may read the payload at any time, copy it out before releasing
+                response.payload();
+                releasePayload(response);
                 responseFuture.putResponse(response);
                 responseFuture.release();
             }
         } else {
             LOG.warn("Response {} from {} doesn't have a matched request!", response, RemotingUtil.extractRemoteAddress(ctx.channel()));
+            releasePayload(response);
         }
     }
 
@@ -270,6 +361,8 @@ public abstract class NettyRemotingAbstract implements RemotingService {
                     LOG.error(String.format("Process request %s error !", cmd.toString()), e);
 
                     handleException(e, cmd, ctx);
+                } finally {
+                    releasePayload(cmd);
                 }
             }
         };
@@ -280,12 +373,13 @@ public abstract class NettyRemotingAbstract implements RemotingService {
     }
 
     /**
-     * Execute callback in callback executor. If callback executor is null, run directly in current thread
+     * Execute callback in callback executor. If callback executor is null, or the future asks to complete on
+     * the IO thread, run directly in current thread
      */
     private void executeAsyncHandler(final ResponseFuture responseFuture) {
         boolean runInThisThread = false;
         ExecutorService executor = asyncHandlerExecutor;
-        if (executor != null) {
+        if (executor != null && !responseFuture.isCompleteOnIoThread()) {
             try {
                 executor.submit(new Runnable() {
                     @Override
@@ -296,6 +390,7 @@ public abstract class NettyRemotingAbstract implements RemotingService {
                             LOG.warn("Execute async handler in specific executor exception, ", e);
                         } finally {
                             responseFuture.release();
+                            releasePayload(responseFuture.getResponseCommand());
                         }
                     }
                 });
@@ -314,20 +409,81 @@ public abstract class NettyRemotingAbstract implements RemotingService {
                 LOG.warn("Execute async handler in current thread exception", e);
             } finally {
                 responseFuture.release();
+                releasePayload(responseFuture.getResponseCommand());
             }
         }
     }
 
+    /**
+     * Releases the inbound buffer retained by a command decoded in zero-copy mode.
+     */
+    private static void releasePayload(final RemotingCommand command) {
+        if (command instanceof RemotingCommandImpl) {
+            ((RemotingCommandImpl) command).release();
+        }
+    }
+
     private void requestFail(final int requestID, final RemotingRuntimeException cause) {
-        ResponseFuture responseFuture = ackTables.remove(requestID);
+        ResponseFuture responseFuture = removeResponseFuture(requestID);
         if (responseFuture != null) {
             responseFuture.setSendRequestOK(false);
-            responseFuture.putResponse(null);
+            // The cause must be visible to a sync caller woken up by the response
             responseFuture.setCause(cause);
+            responseFuture.putResponse(null);
             executeAsyncHandler(responseFuture);
         }
     }
 
+    /**
+     * Fails the requests awaiting a response on the channel, it has closed and no response will come.
+     *
+     * @param channel the closed channel
+     */
+    protected void failInFlightRequests(final Channel channel) {
+        Set<ResponseFuture> inFlightRequests = channel.attr(IN_FLIGHT_REQUESTS_KEY).get();
+        if (inFlightRequests == null || inFlightRequests.isEmpty()) {
+            return;
+        }
+        String remoteAddr = RemotingUtil.extractRemoteAddress(channel);
+        for (ResponseFuture responseFuture : inFlightRequests) {
+            requestFail(responseFuture.getRequestId(), new RemotingAccessException(String.format("Channel to %s closed", remoteAddr)));
+        }
+    }
+
+    void addResponseFuture(final Channel channel, final ResponseFuture responseFuture) {
+        this.ackTables.put(responseFuture.getRequestId(), responseFuture);
+        responseFuture.setChannel(channel);
+        Attribute<Set<ResponseFuture>> attribute = channel.attr(IN_FLIGHT_REQUESTS_KEY);
+        Set<ResponseFuture> inFlightRequests = attribute.get();
+        if (inFlightRequests == null) {
+            Set<ResponseFuture> created = Collections.newSetFromMap(new ConcurrentHashMap<ResponseFuture, Boolean>());
+            inFlightRequests = attribute.setIfAbsent(created);
+            if (inFlightRequests == null) {
+                inFlightRequests = created;
+            }
+        }
+        inFlightRequests.add(responseFuture);
+    }
+
+    private ResponseFuture removeResponseFuture(final int requestID) {
+        ResponseFuture responseFuture = this.ackTables.remove(requestID);
+        if (responseFuture != null) {
+            responseFutureRemoved(responseFuture);
+        }
+        return responseFuture;
+    }
+
+    private static void responseFutureRemoved(final ResponseFuture responseFuture) {
+        responseFuture.cancelTimeout();
+        Channel channel = responseFuture.getChannel();
+        if (channel != null) {
+            Set<ResponseFuture> inFlightRequests = channel.attr(IN_FLIGHT_REQUESTS_KEY).get();
+            if (inFlightRequests != null) {
+                inFlightRequests.remove(responseFuture);
+            }
+        }
+    }
+
     private void requestFail(final ResponseFuture responseFuture, final RemotingRuntimeException cause) {
         responseFuture.setCause(cause);
         executeAsyncHandler(responseFuture);
@@ -375,7 +531,7 @@ public abstract class NettyRemotingAbstract implements RemotingService {
             responseFuture.setRequestCommand(request);
             responseFuture.setRemoteAddr(remoteAddr);
 
-            this.ackTables.put(requestID, responseFuture);
+            this.addResponseFuture(channel, responseFuture);
 
             ChannelFutureListener listener = new ChannelFutureListener() {
                 @Override
@@ -386,7 +542,7 @@ public abstract class NettyRemotingAbstract implements RemotingService {
                     } else {
                         responseFuture.setSendRequestOK(false);
 
-                        ackTables.remove(requestID);
+                        removeResponseFuture(requestID);
                         responseFuture.setCause(new RemotingAccessException(RemotingUtil.extractRemoteAddress(channel), f.cause()));
                         responseFuture.putResponse(null);
 
@@ -410,7 +566,7 @@ public abstract class NettyRemotingAbstract implements RemotingService {
 
             return responseCommand;
         } finally {
-            this.ackTables.remove(request.requestID());
+            this.removeResponseFuture(request.requestID());
         }
     }
 
@@ -426,11 +582,41 @@ public abstract class NettyRemotingAbstract implements RemotingService {
 
         this.interceptorGroup.beforeRequest(new RequestContext(RemotingEndPoint.REQUEST, remoteAddr, request));
 
-        this.invokeAsync0(remoteAddr, channel, request, asyncHandler, timeoutMillis);
+        this.invokeAsync0(remoteAddr, channel, request, asyncHandler, timeoutMillis, false);
+    }
+
+    /**
+     * Sends the request asynchronously and returns a future of the response. If {@code completeOnIoThread} is
+     * true the future completes on the thread that reads the response (or fires the timeout) instead of the
+     * async handler executor, so continuations must not block.
+     */
+    public CompletableFuture<RemotingCommand> invokeAsyncWithInterceptor(final Channel channel, final RemotingCommand request,
+                                                                         long timeoutMillis, boolean completeOnIoThread) {
+        request.trafficType(TrafficType.REQUEST_ASYNC);
+
+        final String remoteAddr = RemotingUtil.extractRemoteAddress(channel);
+
+        this.interceptorGroup.beforeRequest(new RequestContext(RemotingEndPoint.REQUEST, remoteAddr, request));
+
+        final CompletableFuture<RemotingCommand> future = new CompletableFuture<RemotingCommand>();
+        this.invokeAsync0(remoteAddr, channel, request, new AsyncHandler() {
+            @Override
+            public void onFailure(RemotingCommand request, Throwable cause) {
+                future.completeExceptionally(cause);
+            }
+
+            @Override
+            public void onSuccess(RemotingCommand response) {
+                // Copy the payload out, the zero-copy buffer is released once the handler returns
+                response.payload();
+                future.complete(response);
+            }
+        }, timeoutMillis, completeOnIoThread);
+        return future;
     }
 
     private void invokeAsync0(final String remoteAddr, final Channel channel, final RemotingCommand request,
-                              final AsyncHandler asyncHandler, final long timeoutMillis) {
+                              final AsyncHandler asyncHandler, final long timeoutMillis, final boolean completeOnIoThread) {
         boolean acquired = this.semaphoreAsync.tryAcquire();
         if (acquired) {
             final int requestID = request.requestID();
@@ -440,8 +626,18 @@ public abstract class NettyRemotingAbstract implements RemotingService {
             final ResponseFuture responseFuture = new ResponseFuture(requestID, timeoutMillis, asyncHandler, once);
             responseFuture.setRequestCommand(request);
             responseFuture.setRemoteAddr(remoteAddr);
+            responseFuture.setCompleteOnIoThread(completeOnIoThread);
 
-            this.ackTables.put(requestID, responseFuture);
+            this.addResponseFuture(channel, responseFuture);
+            responseFuture.setTimeout(this.timeoutTimer.newTimeout(new TimerTask() {
+                @Override
+                public void run(Timeout timeout) {
+                    ResponseFuture rf = removeResponseFuture(requestID);
+                    if (rf != null) {
+                        requestTimeout(rf);
+                    }
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS));
             try {
                 ChannelFutureListener listener = new ChannelFutureListener() {
                     @Override
@@ -463,7 +659,9 @@ public abstract class NettyRemotingAbstract implements RemotingService {
             }
         } else {
             String info = String.format("No available async semaphore to issue the request request %s", request.toString());
-            requestFail(new ResponseFuture(request.requestID(), timeoutMillis, asyncHandler, null), new SemaphoreExhaustedException(info));
+            ResponseFuture responseFuture = new ResponseFuture(request.requestID(), timeoutMillis, asyncHandler, null);
+            responseFuture.setCompleteOnIoThread(completeOnIoThread);
+            requestFail(responseFuture, new SemaphoreExhaustedException(info));
             LOG.error(info);
         }
     }
@@ -509,10 +707,12 @@ public abstract class NettyRemotingAbstract implements RemotingService {
     }
 
     @Override
-    public void registerRequestProcessor(short requestCode, RequestProcessor processor, ExecutorService executor) {
-        Pair<RequestProcessor, ExecutorService> pair = new Pair<>(processor, executor);
-        if (!this.processorTables.containsKey(requestCode)) {
-            this.processorTables.put(requestCode, pair);
+    public synchronized void registerRequestProcessor(short requestCode, RequestProcessor processor, ExecutorService executor) {
+        int index = requestCode & 0xFFFF;
+        if (this.processorTables[index] == null) {
+            Pair<RequestProcessor, ExecutorService>[] processorTables = this.processorTables.clone();
+            processorTables[index] = new Pair<>(processor, executor);
+            this.processorTables = processorTables;
         }
     }
 
@@ -522,13 +722,18 @@ public abstract class NettyRemotingAbstract implements RemotingService {
     }
 
     @Override
-    public void unregisterRequestProcessor(short requestCode) {
-        this.processorTables.remove(requestCode);
+    public synchronized void unregisterRequestProcessor(short requestCode) {
+        int index = requestCode & 0xFFFF;
+        if (this.processorTables[index] != null) {
+            Pair<RequestProcessor, ExecutorService>[] processorTables = this.processorTables.clone();
+            processorTables[index] = null;
+            this.processorTables = processorTables;
+        }
     }
 
     @Override
     public Pair<RequestProcessor, ExecutorService> processor(short requestCode) {
-        return processorTables.get(requestCode);
+        return processorTables[requestCode & 0xFFFF];
     }
 
     @Override
@@ -39,9 +39,11 @@ import link.thingscloud.netty.remoting.config.RemotingClientConfig;
 import link.thingscloud.netty.remoting.external.ThreadUtils;
 import link.thingscloud.netty.remoting.impl.netty.handler.Decoder;
 import link.thingscloud.netty.remoting.impl.netty.handler.Encoder;
+import link.thingscloud.netty.remoting.impl.netty.handler.OnewayBatchHandler;
 import link.thingscloud.netty.remoting.internal.JvmUtils;
 
 import java.net.SocketAddress;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -84,8 +86,13 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     @Override
                     public void initChannel(SocketChannel ch) {
                         ch.pipeline().addLast(workerGroup,
-                                new Decoder(),
-                                new Encoder(),
+                                new Decoder(clientConfig.isPayloadZeroCopyEnable()),
+                                new Encoder(clientConfig));
+                        if (clientConfig.getClientOnewayBatchDelayMicros() > 0) {
+                            ch.pipeline().addLast(workerGroup, new OnewayBatchHandler(clientConfig.getClientOnewayBatchDelayMicros(),
+                                    clientConfig.getClientOnewayBatchMaxBytes()));
+                        }
+                        ch.pipeline().addLast(workerGroup,
                                 new IdleStateHandler(clientConfig.getConnectionChannelReaderIdleSeconds(), clientConfig.getConnectionChannelWriterIdleSeconds(), clientConfig.getConnectionChannelIdleSeconds()),
                                 new ClientConnectionHandler(),
                                 new RemotingCommandDispatcher());
@@ -168,6 +175,24 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         }
     }
 
+    @Override
+    public CompletableFuture<RemotingCommand> invokeAsync(final String address, final RemotingCommand request, final long timeoutMillis) {
+        return this.invokeAsync(address, request, timeoutMillis, false);
+    }
+
+    @Override
+    public CompletableFuture<RemotingCommand> invokeAsync(final String address, final RemotingCommand request, final long timeoutMillis,
+                                                          final boolean completeOnIoThread) {
+        final Channel channel = this.clientChannelManager.createIfAbsent(address);
+        if (channel != null && channel.isActive()) {
+            return this.invokeAsyncWithInterceptor(channel, request, timeoutMillis, completeOnIoThread);
+        }
+        this.clientChannelManager.closeChannel(address, channel);
+        CompletableFuture<RemotingCommand> future = new CompletableFuture<RemotingCommand>();
+        future.completeExceptionally(new RemotingConnectFailureException(address));
+        return future;
+    }
+
     @Override
     public void invokeOneWay(final String address, final RemotingCommand request) {
         final Channel channel = this.clientChannelManager.createIfAbsent(address);
@@ -204,9 +229,16 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             LOG.info("Remote address {} close channel {}.", ctx.channel().remoteAddress(), ctx.channel());
             NettyRemotingClient.this.clientChannelManager.closeChannel(ctx.channel());
             super.close(ctx, promise);
+            failInFlightRequests(ctx.channel());
             putNettyEvent(new NettyChannelEvent(NettyChannelEventType.CLOSE, ctx.channel()));
         }
 
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            super.channelInactive(ctx);
+            failInFlightRequests(ctx.channel());
+        }
+
         @Override
         public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
             if (evt instanceof IdleStateEvent) {
@@ -55,6 +55,7 @@ import link.thingscloud.netty.remoting.internal.JvmUtils;
 import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -137,6 +138,17 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
         invokeAsyncWithInterceptor(((NettyChannelImpl) remotingChannel).getChannel(), request, asyncHandler, timeoutMillis);
     }
 
+    @Override
+    public CompletableFuture<RemotingCommand> invokeAsync(final RemotingChannel remotingChannel, final RemotingCommand request, final long timeoutMillis) {
+        return invokeAsync(remotingChannel, request, timeoutMillis, false);
+    }
+
+    @Override
+    public CompletableFuture<RemotingCommand> invokeAsync(final RemotingChannel remotingChannel, final RemotingCommand request, final long timeoutMillis,
+                                                          final boolean completeOnIoThread) {
+        return invokeAsyncWithInterceptor(((NettyChannelImpl) remotingChannel).getChannel(), request, timeoutMillis, completeOnIoThread);
+    }
+
     @Override
     public void invokeOneWay(final RemotingChannel remotingChannel, final RemotingCommand request) {
         invokeOnewayWithInterceptor(((NettyChannelImpl) remotingChannel).getChannel(), request);
@@ -166,6 +178,7 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
         public void channelInactive(ChannelHandlerContext ctx) throws Exception {
             LOG.info("Channel {} became inactive, remote address {}.", ctx.channel(), ctx.channel().remoteAddress());
             super.channelInactive(ctx);
+            failInFlightRequests(ctx.channel());
             putNettyEvent(new NettyChannelEvent(NettyChannelEventType.CLOSE, ctx.channel()));
         }
 
@@ -211,10 +224,11 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
             try {
                 // Peek the current read index byte to determine if the content is starting with TLS handshake
                 byte magic = byteBuf.getByte(byteBuf.readerIndex());
-                if (magic == CodecHelper.PROTOCOL_MAGIC) {
+                if (magic == CodecHelper.PROTOCOL_MAGIC || magic == CodecHelper.PROTOCOL_MAGIC_V2) {
+                    // The decoder records the version of the client, the encoder answers in it
                     ctx.pipeline().addLast(workerGroup,
-                            new Encoder(),
-                            new Decoder(),
+                            new Encoder(serverConfig),
+                            new Decoder(serverConfig.isPayloadZeroCopyEnable()),
                             new IdleStateHandler(serverConfig.getConnectionChannelReaderIdleSeconds(), serverConfig.getConnectionChannelWriterIdleSeconds(), serverConfig.getConnectionChannelIdleSeconds()),
                             new ServerConnectionHandler(),
                             new RemotingCommandDispatcher());
@@ -231,7 +245,8 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
                             new ServerConnectionHandler(),
                             new RemotingCommandDispatcher());
                 } else {
-                    throw new RemotingCodecException(String.format("MagicCode %d is wrong, expect %d or %d", magic, CodecHelper.PROTOCOL_MAGIC, CodecHelper.PROTOCOL_MAGIC_G));
+                    throw new RemotingCodecException(String.format("MagicCode %d is wrong, expect %d, %d or %d", magic,
+                            CodecHelper.PROTOCOL_MAGIC, CodecHelper.PROTOCOL_MAGIC_V2, CodecHelper.PROTOCOL_MAGIC_G));
                 }
             } catch (Exception e) {
 
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.remoting.impl.netty.handler;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import link.thingscloud.netty.remoting.impl.command.CodecContext;
+
+/**
+ * Binds a {@link CodecContext} to a channel, so the encoder and the decoder of the channel see the same state.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+final class ChannelCodecContext {
+    private static final AttributeKey<CodecContext> CODEC_CONTEXT_KEY = AttributeKey.valueOf("RemotingCodecContext");
+
+    private ChannelCodecContext() {
+    }
+
+    static CodecContext get(Channel channel) {
+        Attribute<CodecContext> attribute = channel.attr(CODEC_CONTEXT_KEY);
+        CodecContext context = attribute.get();
+        if (context == null) {
+            CodecContext created = new CodecContext();
+            context = attribute.setIfAbsent(created);
+            if (context == null) {
+                context = created;
+            }
+        }
+        return context;
+    }
+}
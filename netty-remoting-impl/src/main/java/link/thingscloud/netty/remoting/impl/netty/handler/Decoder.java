@@ -18,28 +18,71 @@
 package link.thingscloud.netty.remoting.impl.netty.handler;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 import link.thingscloud.netty.remoting.api.buffer.RemotingBuffer;
 import link.thingscloud.netty.remoting.api.command.RemotingCommand;
+import link.thingscloud.netty.remoting.api.command.TrafficType;
 import link.thingscloud.netty.remoting.api.exception.RemotingCodecException;
 import link.thingscloud.netty.remoting.impl.buffer.NettyRemotingBuffer;
+import link.thingscloud.netty.remoting.impl.command.CodecContext;
 import link.thingscloud.netty.remoting.impl.command.CodecHelper;
+import link.thingscloud.netty.remoting.impl.command.RemotingCommandImpl;
+import link.thingscloud.netty.remoting.internal.ChecksumUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.Checksum;
 
 /**
+ * Decodes frames of both protocol versions. Once the header of a partial frame has been read, its length is kept
+ * and later reads only compare the readable bytes with it until the frame is complete. Once a quarter of a large
+ * frame has arrived, the cumulation buffer reserves the rest of it at once.
+ *
  * @author zhouhailin
  * @since 0.5.0
  */
 public class Decoder extends ByteToMessageDecoder {
     private static final Logger LOG = LoggerFactory.getLogger(Decoder.class);
+    /**
+     * The rest of a partial frame is reserved once this share of it has arrived, as the declared length comes from
+     * the peer: a forged header gets at most three times the bytes it actually sent.
+     */
+    private static final int PRESIZE_FRACTION = 4;
+
+    private final boolean payloadZeroCopy;
+    private CodecContext codecContext;
+    private Checksum checksum;
+    /**
+     * Length of the partial frame at the reader index, magic code included, 0 when unknown.
+     */
+    private int pendingFrameLength;
 
     public Decoder() {
+        this(false);
+    }
+
+    /**
+     * @param payloadZeroCopy keep payloads as retained slices of the cumulation buffer, see
+     *                        {@link CodecHelper#decode(RemotingBuffer, boolean)}
+     */
+    public Decoder(boolean payloadZeroCopy) {
+        this.payloadZeroCopy = payloadZeroCopy;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        codecContext = ChannelCodecContext.get(ctx.channel());
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        codecContext.release();
     }
 
     @Override
@@ -48,24 +91,25 @@ public class Decoder extends ByteToMessageDecoder {
             return;
         }
 
-        NettyRemotingBuffer wrapper = new NettyRemotingBuffer(in);
-
-        Object msg = this.decode(ctx, wrapper);
-        if (msg != null) {
-            out.add(msg);
+        if (in.readableBytes() < pendingFrameLength) {
+            presizeCumulation(in);
+            return;
         }
-    }
+        pendingFrameLength = 0;
 
-    private Object decode(final ChannelHandlerContext ctx, RemotingBuffer wrapper) throws Exception {
-        int originReaderIndex = wrapper.readerIndex();
+        NettyRemotingBuffer wrapper = new NettyRemotingBuffer(in);
 
-        byte magic = wrapper.readByte();
         try {
-            if (magic != CodecHelper.PROTOCOL_MAGIC) {
-                throw new RemotingCodecException(String.format("MagicCode %d is wrong, expect %d", magic, CodecHelper.PROTOCOL_MAGIC));
+            RemotingCommand cmd = decodeFrame(wrapper);
+            if (cmd == null) {
+                presizeCumulation(in);
+            } else if (cmd.trafficType() == TrafficType.BATCH) {
+                expandBatch((RemotingCommandImpl) cmd, out);
+            } else {
+                out.add(cmd);
             }
-            return decode(wrapper, originReaderIndex);
         } catch (final RemotingCodecException e) {
+            pendingFrameLength = 0;
             LOG.warn("Decode error {}, close the channel {}", e.getMessage(), ctx.channel());
             ctx.channel().close().addListener(new ChannelFutureListener() {
                 @Override
@@ -74,7 +118,66 @@ public class Decoder extends ByteToMessageDecoder {
                 }
             });
         }
-        return null;
+    }
+
+    /**
+     * Reserves the rest of the partial frame in one step once a {@link #PRESIZE_FRACTION} of it is readable, so the
+     * cumulator stops reallocating it on later reads. Shared buffers, which zero-copy payloads still point into, are
+     * left to the cumulator.
+     */
+    private void presizeCumulation(final ByteBuf in) {
+        int readable = in.readableBytes();
+        int missing = pendingFrameLength - readable;
+        if (missing > 0 && in.writableBytes() < missing && readable >= pendingFrameLength / PRESIZE_FRACTION
+                && in.refCnt() == 1 && !in.isReadOnly()) {
+            in.ensureWritable(missing);
+        }
+    }
+
+    private RemotingCommand decodeFrame(final NettyRemotingBuffer wrapper) {
+        int originReaderIndex = wrapper.readerIndex();
+
+        byte magic = wrapper.readByte();
+        if (magic == CodecHelper.PROTOCOL_MAGIC) {
+            return decode(wrapper, originReaderIndex);
+        }
+        if (magic == CodecHelper.PROTOCOL_MAGIC_V2) {
+            return decodeV2(wrapper, originReaderIndex);
+        }
+        throw new RemotingCodecException(String.format("MagicCode %d is wrong, expect %d or %d", magic, CodecHelper.PROTOCOL_MAGIC, CodecHelper.PROTOCOL_MAGIC_V2));
+    }
+
+    /**
+     * Decodes the frames packed in the payload of a batch, the batch itself is released.
+     */
+    private void expandBatch(final RemotingCommandImpl batch, final List<Object> out) {
+        ByteBuf frames = batch.payloadBuffer();
+        if (frames == null && batch.payload() != null) {
+            frames = Unpooled.wrappedBuffer(batch.payload());
+        }
+
+        List<RemotingCommandImpl> commands = new ArrayList<>();
+        try {
+            NettyRemotingBuffer wrapper = frames == null ? null : new NettyRemotingBuffer(frames);
+            while (frames != null && frames.isReadable()) {
+                RemotingCommand cmd = decodeFrame(wrapper);
+                if (cmd == null) {
+                    throw new RemotingCodecException("Batch ends with a truncated frame");
+                }
+                commands.add((RemotingCommandImpl) cmd);
+                if (cmd.trafficType() == TrafficType.BATCH) {
+                    throw new RemotingCodecException("Batch must not be nested");
+                }
+            }
+        } catch (RuntimeException e) {
+            for (RemotingCommandImpl cmd : commands) {
+                cmd.release();
+            }
+            throw e;
+        } finally {
+            batch.release();
+        }
+        out.addAll(commands);
     }
 
     public RemotingCommand decode(final RemotingBuffer wrapper, final int originReaderIndex) {
@@ -95,9 +198,73 @@ public class Decoder extends ByteToMessageDecoder {
         }
 
         if (wrapper.readableBytes() < totalLength - 1 /*MagicCode*/ - 4 /*TotalLen*/) {
+            wrapper.setReaderIndex(originReaderIndex);
+            pendingFrameLength = totalLength;
+            return null;
+        }
+        updateProtocolVersion(CodecHelper.PROTOCOL_VERSION_1);
+        return CodecHelper.decode(wrapper, payloadZeroCopy, codecContext);
+    }
+
+    private RemotingCommand decodeV2(final NettyRemotingBuffer wrapper, final int originReaderIndex) {
+        // Flags and at least one byte of the frame length
+        if (wrapper.readableBytes() < 2) {
+            wrapper.setReaderIndex(originReaderIndex);
+            return null;
+        }
+
+        int flags = wrapper.readByte() & 0xFF;
+        int frameLength = CodecHelper.readFrameLength(wrapper);
+        if (frameLength < 0 || wrapper.readableBytes() < frameLength) {
+            if (frameLength >= 0) {
+                pendingFrameLength = wrapper.readerIndex() - originReaderIndex + frameLength;
+            }
             wrapper.setReaderIndex(originReaderIndex);
             return null;
         }
-        return CodecHelper.decode(wrapper);
+
+        int frameEnd = wrapper.readerIndex() + frameLength;
+        int bodyEnd = frameEnd;
+        if ((flags & CodecHelper.FLAG_CHECKSUM) != 0) {
+            bodyEnd -= CodecHelper.CHECKSUM_LEN;
+            verifyChecksum(wrapper.buffer(), originReaderIndex, bodyEnd);
+        }
+        updateProtocolVersion(CodecHelper.PROTOCOL_VERSION_2);
+        RemotingCommand cmd = CodecHelper.decodeV2(wrapper, flags, payloadZeroCopy, codecContext);
+        if (wrapper.readerIndex() != bodyEnd) {
+            ((RemotingCommandImpl) cmd).release();
+            throw new RemotingCodecException(String.format("Frame length %d does not match the decoded length %d",
+                    frameLength, frameLength + wrapper.readerIndex() - bodyEnd));
+        }
+        wrapper.setReaderIndex(frameEnd);
+        return cmd;
+    }
+
+    /**
+     * Verifies the CRC32C trailer at {@code bodyEnd} against the frame bytes before it, before anything is decoded.
+     */
+    private void verifyChecksum(final ByteBuf in, final int frameStart, final int bodyEnd) {
+        if (bodyEnd < in.readerIndex()) {
+            throw new RemotingCodecException(String.format("Frame length %d is too short for a checksum", bodyEnd - frameStart));
+        }
+        if (checksum == null) {
+            checksum = ChecksumUtils.newCrc32c();
+        }
+        checksum.reset();
+        ChecksumUtils.update(checksum, in, frameStart, bodyEnd - frameStart);
+        int expected = in.getInt(bodyEnd);
+        if ((int) checksum.getValue() != expected) {
+            throw new RemotingCodecException(String.format("Frame checksum %08x does not match %08x",
+                    (int) checksum.getValue(), expected));
+        }
+        if (codecContext != null && !codecContext.checksum()) {
+            codecContext.checksum(true);
+        }
+    }
+
+    private void updateProtocolVersion(int protocolVersion) {
+        if (codecContext != null && codecContext.protocolVersion() != protocolVersion) {
+            codecContext.protocolVersion(protocolVersion);
+        }
     }
 }
@@ -18,36 +18,313 @@
 package link.thingscloud.netty.remoting.impl.netty.handler;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
-import link.thingscloud.netty.remoting.api.buffer.RemotingBuffer;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import link.thingscloud.netty.remoting.api.command.RemotingCommand;
 import link.thingscloud.netty.remoting.api.exception.RemotingCodecException;
+import link.thingscloud.netty.remoting.config.RemotingConfig;
 import link.thingscloud.netty.remoting.impl.buffer.NettyRemotingBuffer;
+import link.thingscloud.netty.remoting.impl.command.CodecContext;
 import link.thingscloud.netty.remoting.impl.command.CodecHelper;
+import link.thingscloud.netty.remoting.impl.command.PropertyTable;
+import link.thingscloud.netty.remoting.impl.command.RemotingCommandBatch;
+import link.thingscloud.netty.remoting.impl.command.SerializableHelper;
+import link.thingscloud.netty.remoting.internal.ChecksumUtils;
 import link.thingscloud.netty.remoting.internal.RemotingUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
 /**
+ * Encodes a command into a frame buffer allocated once at its exact length from the channel's allocator. Byte
+ * array payloads are copied into it whatever their size: the transport would copy a heap payload component into a
+ * direct buffer anyway.
+ * Frames are written in the protocol version of the peer once it has sent one, the configured version before.
+ * Protocol v1 properties are only compact or indexed once the peer has shown it reads them, by sending them or by
+ * the {@link CodecHelper#CODEC_PROPERTY} which this encoder adds to legacy properties while they are enabled.
+ * Protocol v2 payloads are deflated when they reach {@code compressionThreshold} or the command asks for it, and
+ * v2 frames end with a CRC32C checksum when enabled or once the peer has sent one. A payload object is serialized
+ * straight into a pooled buffer, which is sent as the payload component of a {@link CompositeByteBuf} frame.
+ *
  * @author zhouhailin
  * @since 0.5.0
  */
-public class Encoder extends MessageToByteEncoder<RemotingCommand> {
+public class Encoder extends MessageToMessageEncoder<RemotingCommand> {
     private static final Logger LOG = LoggerFactory.getLogger(Encoder.class);
 
+    /**
+     * Smaller payloads hardly shrink, and resetting the deflater costs more than sending them.
+     */
+    public static final int MIN_COMPRESSIBLE_PAYLOAD = 64;
+
+    private final boolean compactProperties;
+    private final int propertyTableCapacity;
+    private final int protocolVersion;
+    private final int compressionThreshold;
+    private final int compressionLevel;
+    private final boolean checksumEnable;
+    private CodecContext codecContext;
+    private Deflater deflater;
+    private Checksum checksum;
+
     public Encoder() {
+        this(false);
+    }
+
+    /**
+     * @param compactProperties advertise the compact format, it is sent once the peer has shown it reads it
+     */
+    public Encoder(boolean compactProperties) {
+        this(compactProperties, 0);
+    }
+
+    /**
+     * @param compactProperties     advertise the compact format, it is sent once the peer has shown it reads it
+     * @param propertyTableCapacity index repeated properties in a table of this many entries once the peer reads
+     *                              compact properties, 0 to only do so once the peer has announced a table
+     */
+    public Encoder(boolean compactProperties, int propertyTableCapacity) {
+        this(compactProperties, propertyTableCapacity, CodecHelper.PROTOCOL_VERSION_1, 0, Deflater.BEST_SPEED, false);
+    }
+
+    public Encoder(RemotingConfig config) {
+        this(config.isPropertyCompactEnable(), config.getPropertyTableCapacity(), config.getProtocolVersion(),
+                config.getCompressionThreshold(), config.getCompressionLevel(), config.isChecksumEnable());
+    }
+
+    private Encoder(boolean compactProperties, int propertyTableCapacity, int protocolVersion, int compressionThreshold,
+                    int compressionLevel, boolean checksumEnable) {
+        this.compactProperties = compactProperties;
+        this.propertyTableCapacity = Math.min(propertyTableCapacity, PropertyTable.MAX_CAPACITY);
+        this.protocolVersion = protocolVersion;
+        this.compressionThreshold = compressionThreshold;
+        this.compressionLevel = compressionLevel;
+        this.checksumEnable = checksumEnable;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        codecContext = ChannelCodecContext.get(ctx.channel());
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    private PropertyTable propertyTable() {
+        PropertyTable table = codecContext.encoderTable();
+        if (table == null) {
+            int capacity = propertyTableCapacity > 0 ? propertyTableCapacity : codecContext.peerPropertyTableCapacity();
+            if (capacity > 0) {
+                table = PropertyTable.forEncoder(capacity);
+                codecContext.encoderTable(table);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Deflates the payload into a heap buffer no larger than the payload itself.
+     *
+     * @return the compressed payload, or null when it does not shrink
+     */
+    private ByteBuf deflate(ChannelHandlerContext ctx, byte[] payload, int offset, int length) {
+        if (deflater == null) {
+            deflater = new Deflater(compressionLevel, true);
+        }
+        ByteBuf compressed = ctx.alloc().heapBuffer(length, length);
+        try {
+            deflater.setInput(payload, offset, length);
+            deflater.finish();
+            int len = deflater.deflate(compressed.array(), compressed.arrayOffset(), length);
+            if (!deflater.finished() || len + CodecHelper.varIntSize(length) >= length) {
+                return null;
+            }
+            compressed.writerIndex(len);
+            ByteBuf result = compressed;
+            compressed = null;
+            return result;
+        } finally {
+            deflater.reset();
+            if (compressed != null) {
+                compressed.release();
+            }
+        }
+    }
+
+    /**
+     * Serializes the payload object of the command into a pooled buffer which becomes the payload of the frame.
+     * It is a heap buffer when the payload may get deflated.
+     */
+    private ByteBuf serialize(ChannelHandlerContext ctx, RemotingCommand command, boolean compressible) {
+        ByteBuf serialized = compressible ? ctx.alloc().heapBuffer() : ctx.alloc().ioBuffer();
+        try {
+            SerializableHelper.serialize(command.serializableTypeId(), command.payloadObject(), serialized);
+            return serialized;
+        } catch (RuntimeException e) {
+            serialized.release();
+            throw e;
+        }
+    }
+
+    private CodecHelper.FrameLayout layout(RemotingCommand command, int payloadLen, int version, int flags,
+                                           PropertyTable table) {
+        if (version == CodecHelper.PROTOCOL_VERSION_2) {
+            return CodecHelper.layoutV2(command, payloadLen, flags, table);
+        }
+        // Until the peer has shown it reads the compact format, ask for it instead of sending it
+        if (!codecContext.compactProperties()) {
+            return CodecHelper.layout(command, payloadLen, false, null, compactProperties || propertyTableCapacity > 0);
+        }
+        return CodecHelper.layout(command, payloadLen, true, table);
+    }
+
+    /**
+     * Packs the frames of the batched commands into the payload of one frame, written into a single buffer. The
+     * inner frames carry no checksum and are not compressed, the outer frame covers them.
+     */
+    private ByteBuf encodeBatch(ChannelHandlerContext ctx, RemotingCommandBatch batch, int version, int flags) {
+        List<RemotingCommand> commands = batch.commands();
+        CodecHelper.FrameLayout[] layouts = new CodecHelper.FrameLayout[commands.size()];
+        int payloadLen = 0;
+        for (int i = 0; i < layouts.length; i++) {
+            RemotingCommand command = commands.get(i);
+            layouts[i] = layout(command, command.payload() == null ? 0 : command.payload().length, version, 0, propertyTable());
+            payloadLen += layouts[i].frameLength();
+        }
+        CodecHelper.FrameLayout layout = layout(batch, payloadLen, version, flags, null);
+
+        ByteBuf frame = ctx.alloc().ioBuffer(layout.frameLength());
+        try {
+            NettyRemotingBuffer buffer = new NettyRemotingBuffer(frame);
+            CodecHelper.encodeHeader(layout, buffer);
+            for (int i = 0; i < layouts.length; i++) {
+                CodecHelper.encodeHeader(layouts[i], buffer);
+                byte[] payload = commands.get(i).payload();
+                if (payload != null) {
+                    frame.writeBytes(payload);
+                }
+            }
+            if (layout.trailerLength() != 0) {
+                frame.writeInt(checksum(frame));
+            }
+            return frame;
+        } catch (RuntimeException e) {
+            frame.release();
+            throw e;
+        }
+    }
+
+    private CompositeByteBuf compositeFrame(ChannelHandlerContext ctx, CodecHelper.FrameLayout layout, ByteBuf header,
+                                           ByteBuf payload) {
+        CompositeByteBuf frame = ctx.alloc().compositeBuffer(3);
+        frame.addComponents(true, header, payload);
+        if (layout.trailerLength() != 0) {
+            ByteBuf trailer = ctx.alloc().ioBuffer(CodecHelper.CHECKSUM_LEN);
+            trailer.writeInt(checksum(frame));
+            frame.addComponent(true, trailer);
+        }
+        return frame;
+    }
+
+    private int checksum(ByteBuf frame) {
+        if (checksum == null) {
+            checksum = ChecksumUtils.newCrc32c();
+        }
+        checksum.reset();
+        ChecksumUtils.update(checksum, frame, frame.readerIndex(), frame.readableBytes());
+        return (int) checksum.getValue();
     }
 
     @Override
-    public void encode(final ChannelHandlerContext ctx, RemotingCommand remotingCommand, ByteBuf out) throws Exception {
+    public void encode(final ChannelHandlerContext ctx, RemotingCommand remotingCommand, List<Object> out) throws Exception {
+        ByteBuf header = null;
+        ByteBuf compressed = null;
+        ByteBuf serialized = null;
         try {
-            RemotingBuffer wrapper = new NettyRemotingBuffer(out);
+            // Answer in the version the peer speaks
+            int version = codecContext.protocolVersion() != 0 ? codecContext.protocolVersion() : protocolVersion;
+            int flags = checksumEnable || codecContext.checksum() ? CodecHelper.FLAG_CHECKSUM : 0;
+            if (remotingCommand instanceof RemotingCommandBatch) {
+                out.add(encodeBatch(ctx, (RemotingCommandBatch) remotingCommand, version, flags));
+                return;
+            }
+
+            boolean compressible = version == CodecHelper.PROTOCOL_VERSION_2
+                    && (remotingCommand.compressed() || compressionThreshold > 0);
+            byte[] payload = null;
+            int payloadLen;
+            if (remotingCommand.payloadObject() != null) {
+                serialized = serialize(ctx, remotingCommand, compressible);
+                payloadLen = serialized.readableBytes();
+            } else {
+                payload = remotingCommand.payload();
+                payloadLen = payload == null ? 0 : payload.length;
+            }
+
+            if (compressible && payloadLen >= MIN_COMPRESSIBLE_PAYLOAD
+                    && (remotingCommand.compressed() || payloadLen >= compressionThreshold)) {
+                compressed = serialized != null
+                        ? deflate(ctx, serialized.array(), serialized.arrayOffset() + serialized.readerIndex(), payloadLen)
+                        : deflate(ctx, payload, 0, payloadLen);
+            }
+
+            CodecHelper.FrameLayout layout;
+            if (compressed != null) {
+                // The payload section carries the uncompressed length ahead of the deflate data
+                int lengthPrefix = CodecHelper.varIntSize(payloadLen);
+                layout = CodecHelper.layoutV2(remotingCommand, lengthPrefix + compressed.readableBytes(),
+                        flags | CodecHelper.FLAG_COMPRESSED, propertyTable());
+            } else {
+                layout = layout(remotingCommand, payloadLen, version, flags, propertyTable());
+            }
 
-            encode(remotingCommand, wrapper);
+            if (compressed != null) {
+                header = ctx.alloc().ioBuffer(layout.headerLength() + CodecHelper.varIntSize(payloadLen));
+                NettyRemotingBuffer buffer = new NettyRemotingBuffer(header);
+                CodecHelper.encodeHeader(layout, buffer);
+                CodecHelper.writeVarInt(payloadLen, buffer);
+
+                ByteBuf payloadBuffer = compressed;
+                compressed = null;
+                out.add(compositeFrame(ctx, layout, header, payloadBuffer));
+            } else if (serialized != null) {
+                header = ctx.alloc().ioBuffer(layout.headerLength());
+                CodecHelper.encodeHeader(layout, new NettyRemotingBuffer(header));
+
+                ByteBuf payloadBuffer = serialized;
+                serialized = null;
+                out.add(compositeFrame(ctx, layout, header, payloadBuffer));
+            } else {
+                header = ctx.alloc().ioBuffer(layout.frameLength());
+                CodecHelper.encodeHeader(layout, new NettyRemotingBuffer(header));
+                if (payloadLen != 0) {
+                    header.writeBytes(payload);
+                }
+                if (layout.trailerLength() != 0) {
+                    header.writeInt(checksum(header));
+                }
+                out.add(header);
+            }
         } catch (final RemotingCodecException e) {
+            if (header != null) {
+                header.release();
+            }
+            if (compressed != null) {
+                compressed.release();
+            }
+
             String remoteAddress = RemotingUtil.extractRemoteAddress(ctx.channel());
             LOG.error(String.format("Error occurred when encoding command for channel %s", remoteAddress), e);
 
@@ -57,10 +334,17 @@ public class Encoder extends MessageToByteEncoder<RemotingCommand> {
                     LOG.warn("Close channel {} because of error {}, result is {}", ctx.channel(), e, future.isSuccess());
                 }
             });
+            // Nothing to send, the write fails on the closed channel
+            out.add(Unpooled.EMPTY_BUFFER);
+        } finally {
+            if (serialized != null) {
+                serialized.release();
+            }
+            // Drops the table updates of a frame which has not been encoded
+            PropertyTable table = codecContext.encoderTable();
+            if (table != null) {
+                table.rollback();
+            }
         }
     }
-
-    private void encode(final RemotingCommand remotingCommand, final RemotingBuffer out) {
-        CodecHelper.encodeCommand(remotingCommand, out);
-    }
 }
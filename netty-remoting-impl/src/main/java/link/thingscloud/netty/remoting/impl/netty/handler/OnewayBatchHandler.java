@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.remoting.impl.netty.handler;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.PromiseNotifier;
+import io.netty.util.concurrent.ScheduledFuture;
+import link.thingscloud.netty.remoting.api.command.RemotingCommand;
+import link.thingscloud.netty.remoting.api.command.TrafficType;
+import link.thingscloud.netty.remoting.impl.command.CodecHelper;
+import link.thingscloud.netty.remoting.impl.command.RemotingCommandBatch;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects oneway requests written to the channel for up to {@code maxDelayMicros} or {@code maxBytes}, and sends
+ * them as one {@link TrafficType#BATCH} frame. Any other write sends the pending batch first, so the order of the
+ * writes is kept. Commands with a payload object are sent on their own, so it is serialized once, into the frame.
+ * Sits right behind the {@link Encoder}.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public class OnewayBatchHandler extends ChannelDuplexHandler {
+    private final long maxDelayMicros;
+    private final int maxBytes;
+
+    private RemotingCommandBatch batch;
+    private final List<ChannelPromise> promises = new ArrayList<>();
+    private int batchBytes;
+    private ScheduledFuture<?> sendTask;
+
+    /**
+     * @param maxDelayMicros how long the first command of a batch waits for others
+     * @param maxBytes       the batch is sent before the frames of its commands would exceed this many bytes
+     */
+    public OnewayBatchHandler(long maxDelayMicros, int maxBytes) {
+        this.maxDelayMicros = maxDelayMicros;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof RemotingCommand) || ((RemotingCommand) msg).trafficType() != TrafficType.REQUEST_ONEWAY
+                || ((RemotingCommand) msg).payloadObject() != null) {
+            writeBatch(ctx);
+            ctx.write(msg, promise);
+            return;
+        }
+
+        RemotingCommand command = (RemotingCommand) msg;
+        // Frame length in the widest layout, remark and properties counted as encoded
+        int frameBytes = CodecHelper.layout(command, command.payload() == null ? 0 : command.payload().length).frameLength();
+        if (batch != null && batchBytes + frameBytes > maxBytes) {
+            writeBatch(ctx);
+            ctx.flush();
+        }
+        if (batch == null) {
+            batch = new RemotingCommandBatch();
+            scheduleSend(ctx);
+        }
+        batch.add(command);
+        promises.add(promise);
+        batchBytes += frameBytes;
+
+        if (batchBytes >= maxBytes) {
+            writeBatch(ctx);
+            ctx.flush();
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        writeBatch(ctx);
+        ctx.flush();
+        ctx.close(promise);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        failBatch();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        failBatch();
+    }
+
+    private void scheduleSend(final ChannelHandlerContext ctx) {
+        sendTask = ctx.executor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                sendTask = null;
+                writeBatch(ctx);
+                ctx.flush();
+            }
+        }, maxDelayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void writeBatch(ChannelHandlerContext ctx) {
+        if (batch == null) {
+            return;
+        }
+        if (sendTask != null) {
+            sendTask.cancel(false);
+            sendTask = null;
+        }
+
+        if (batch.size() == 1) {
+            // Not worth a batch frame
+            ctx.write(batch.commands().get(0), promises.get(0));
+        } else {
+            ChannelPromise batchPromise = ctx.newPromise();
+            batchPromise.addListener(new PromiseNotifier<>(promises.toArray(new ChannelPromise[0])));
+            ctx.write(batch, batchPromise);
+        }
+        reset();
+    }
+
+    private void failBatch() {
+        if (batch == null) {
+            return;
+        }
+        if (sendTask != null) {
+            sendTask.cancel(false);
+            sendTask = null;
+        }
+        ClosedChannelException cause = new ClosedChannelException();
+        for (ChannelPromise promise : promises) {
+            promise.tryFailure(cause);
+        }
+        reset();
+    }
+
+    private void reset() {
+        batch = null;
+        promises.clear();
+        batchBytes = 0;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.remoting.internal;
+
+import io.netty.buffer.ByteBuf;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C (Castagnoli) checksums of buffers. {@code java.util.zip.CRC32C} is used when the JDK has it (9 or later),
+ * it is an intrinsic on x86 and ARM. Older JDKs fall back to a slicing-by-8 Java implementation.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public final class ChecksumUtils {
+    private static final MethodHandle CRC32C_CONSTRUCTOR;
+    private static final MethodHandle UPDATE_BYTE_BUFFER;
+
+    static {
+        MethodHandle constructor = null;
+        MethodHandle updateByteBuffer = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            constructor = lookup.findConstructor(Class.forName("java.util.zip.CRC32C"), MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Checksum.class));
+            updateByteBuffer = lookup.findVirtual(Checksum.class, "update", MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException e) {
+            // Java 8, use the Java implementation
+            constructor = null;
+            updateByteBuffer = null;
+        }
+        CRC32C_CONSTRUCTOR = constructor;
+        UPDATE_BYTE_BUFFER = updateByteBuffer;
+    }
+
+    private ChecksumUtils() {
+        // Unused
+    }
+
+    /**
+     * @return whether the checksums are computed by the JDK
+     */
+    public static boolean isIntrinsic() {
+        return CRC32C_CONSTRUCTOR != null;
+    }
+
+    /**
+     * @return a new CRC32C checksum
+     */
+    public static Checksum newCrc32c() {
+        if (CRC32C_CONSTRUCTOR != null) {
+            try {
+                return (Checksum) CRC32C_CONSTRUCTOR.invokeExact();
+            } catch (Throwable e) {
+                throw new IllegalStateException("Failed to create java.util.zip.CRC32C", e);
+            }
+        }
+        return new PureJavaCrc32c();
+    }
+
+    /**
+     * Updates the checksum with the bytes of the buffer, heap buffers through their array, direct and composite
+     * buffers through their nio buffers without copying.
+     *
+     * @param checksum the checksum from {@link #newCrc32c()}
+     * @param buf      the buffer to read from, its indexes are not modified
+     * @param index    the first byte
+     * @param length   the number of bytes
+     */
+    public static void update(final Checksum checksum, final ByteBuf buf, final int index, final int length) {
+        if (buf.hasArray()) {
+            checksum.update(buf.array(), buf.arrayOffset() + index, length);
+            return;
+        }
+        for (ByteBuffer nioBuffer : buf.nioBuffers(index, length)) {
+            if (UPDATE_BYTE_BUFFER != null) {
+                try {
+                    UPDATE_BYTE_BUFFER.invokeExact(checksum, nioBuffer);
+                } catch (Throwable e) {
+                    throw new IllegalStateException("Failed to update the checksum", e);
+                }
+            } else {
+                ((PureJavaCrc32c) checksum).updateBuffer(nioBuffer);
+            }
+        }
+    }
+
+    /**
+     * CRC32C with eight lookup tables, processing eight bytes per step.
+     */
+    static final class PureJavaCrc32c implements Checksum {
+        private static final int POLY = 0x82F63B78;
+        private static final int[] TABLE = new int[8 * 256];
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                int crc = i;
+                for (int k = 0; k < 8; k++) {
+                    crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+                }
+                TABLE[i] = crc;
+            }
+            for (int t = 1; t < 8; t++) {
+                for (int i = 0; i < 256; i++) {
+                    int prev = TABLE[(t - 1) * 256 + i];
+                    TABLE[t * 256 + i] = (prev >>> 8) ^ TABLE[prev & 0xFF];
+                }
+            }
+        }
+
+        private int crc = 0xFFFFFFFF;
+
+        @Override
+        public void update(int b) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            int c = crc;
+            while (len >= 8) {
+                int lo = c ^ ((b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | b[off + 3] << 24);
+                int hi = (b[off + 4] & 0xFF) | (b[off + 5] & 0xFF) << 8 | (b[off + 6] & 0xFF) << 16 | b[off + 7] << 24;
+                c = TABLE[7 * 256 + (lo & 0xFF)] ^ TABLE[6 * 256 + ((lo >>> 8) & 0xFF)]
+                        ^ TABLE[5 * 256 + ((lo >>> 16) & 0xFF)] ^ TABLE[4 * 256 + (lo >>> 24)]
+                        ^ TABLE[3 * 256 + (hi & 0xFF)] ^ TABLE[2 * 256 + ((hi >>> 8) & 0xFF)]
+                        ^ TABLE[256 + ((hi >>> 16) & 0xFF)] ^ TABLE[hi >>> 24];
+                off += 8;
+                len -= 8;
+            }
+            while (len-- > 0) {
+                c = (c >>> 8) ^ TABLE[(c ^ b[off++]) & 0xFF];
+            }
+            crc = c;
+        }
+
+        void updateBuffer(ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+                return;
+            }
+            int c = crc;
+            for (int i = buffer.position(); i < buffer.limit(); i++) {
+                c = (c >>> 8) ^ TABLE[(c ^ buffer.get(i)) & 0xFF];
+            }
+            crc = c;
+            buffer.position(buffer.limit());
+        }
+
+        @Override
+        public long getValue() {
+            return ~crc & 0xFFFFFFFFL;
+        }
+
+        @Override
+        public void reset() {
+            crc = 0xFFFFFFFF;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package link.thingscloud.netty.remoting.internal;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
+
+/**
+ * Kryo input and output buffers pooled for {@link KryoUtils} and the Kryo payload serializer alike.
+ *
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public final class KryoBufferUtils {
+    public static final int POOL_CAPACITY = 256;
+    static final int INITIAL_BUFFER_SIZE = 1024;
+    /**
+     * Outputs grown past this size are shrunk back before returning to the pool.
+     */
+    static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    private static final Pool<Output> OUTPUT_POOL = new Pool<Output>(true, false, POOL_CAPACITY) {
+        @Override
+        protected Output create() {
+            return new Output(INITIAL_BUFFER_SIZE, -1);
+        }
+    };
+    private static final Pool<Input> INPUT_POOL = new Pool<Input>(true, false, POOL_CAPACITY) {
+        @Override
+        protected Input create() {
+            return new Input();
+        }
+    };
+
+    /**
+     * Default constructor (private)
+     */
+    private KryoBufferUtils() {
+        // empty
+    }
+
+    public static Output obtainOutput() {
+        return OUTPUT_POOL.obtain();
+    }
+
+    /**
+     * Detaches the output stream, if any, and resets the output before it goes back to the pool.
+     */
+    public static void freeOutput(Output output) {
+        if (output.getOutputStream() != null) {
+            output.setOutputStream(null);
+        }
+        if (output.getBuffer().length > MAX_POOLED_BUFFER_SIZE) {
+            output.setBuffer(new byte[INITIAL_BUFFER_SIZE], -1);
+        } else {
+            output.reset();
+        }
+        OUTPUT_POOL.free(output);
+    }
+
+    public static Input obtainInput() {
+        return INPUT_POOL.obtain();
+    }
+
+    /**
+     * Drops the reference to the read buffer before the input goes back to the pool.
+     */
+    public static void freeInput(Input input) {
+        input.setBuffer(EMPTY_BYTES);
+        INPUT_POOL.free(input);
+    }
+}
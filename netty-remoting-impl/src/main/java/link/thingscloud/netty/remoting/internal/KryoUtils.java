@@ -20,140 +20,122 @@ package link.thingscloud.netty.remoting.internal;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Kryo encoding of objects whose classes are registered explicitly, the type first and then the given classes in
+ * order. Kryo instances are pooled per class set, input and output buffers come from {@link KryoBufferUtils}.
+ *
  * @author : zhouhailin
  * @version 0.5.0
  */
 public class KryoUtils {
+    private static final Class<?>[] EMPTY_CLASSES = new Class<?>[0];
 
-    public static byte[] encode(Object object) {
-        if (object == null) {
-            return null;
+    private static final ClassValue<Pool<Kryo>> TYPE_POOLS = new ClassValue<Pool<Kryo>>() {
+        @Override
+        protected Pool<Kryo> computeValue(Class<?> type) {
+            return newKryoPool(new Class<?>[]{type});
         }
-        Kryo kryo = new Kryo();
-        kryo.register(object.getClass());
-        byte[] buffer = new byte[1024];
-        kryo.writeObject(new Output(buffer), object);
-        return encode(object);
+    };
+    private static final ConcurrentMap<ClassSet, Pool<Kryo>> CLASS_SET_POOLS = new ConcurrentHashMap<>();
+
+    public static byte[] encode(Object object) {
+        return encode(object, EMPTY_CLASSES);
     }
 
     public static byte[] encode(Object object, Class<?>... classes) {
         if (object == null) {
             return null;
         }
-        Kryo kryo = new Kryo();
-        kryo.register(object.getClass());
-        for (Class<?> aClass : classes) {
-            kryo.register(aClass);
+        Pool<Kryo> pool = kryoPool(object.getClass(), classes);
+        Kryo kryo = pool.obtain();
+        Output output = KryoBufferUtils.obtainOutput();
+        try {
+            kryo.writeObject(output, object);
+            return output.toBytes();
+        } finally {
+            pool.free(kryo);
+            KryoBufferUtils.freeOutput(output);
         }
-        byte[] buffer = new byte[1024];
-        kryo.writeObject(new Output(buffer), object);
-        return buffer;
     }
 
     public static <T> T decode(byte[] buffer, Class<T> type) {
-        if (buffer == null || buffer.length == 0) {
-            return null;
-        }
-        Kryo kryo = new Kryo();
-        kryo.register(type);
-        return kryo.readObject(new Input(buffer), type);
+        return decode(buffer, type, EMPTY_CLASSES);
     }
 
     public static <T> T decode(byte[] buffer, Class<T> type, Class<?>... classes) {
         if (buffer == null || buffer.length == 0) {
             return null;
         }
-        Kryo kryo = new Kryo();
-        kryo.register(type);
-        for (Class<?> aClass : classes) {
-            kryo.register(aClass);
+        Pool<Kryo> pool = kryoPool(type, classes);
+        Kryo kryo = pool.obtain();
+        Input input = KryoBufferUtils.obtainInput();
+        try {
+            input.setBuffer(buffer);
+            return kryo.readObject(input, type);
+        } finally {
+            pool.free(kryo);
+            KryoBufferUtils.freeInput(input);
         }
-        return kryo.readObject(new Input(buffer), type);
     }
 
-    public static void main(String[] args) {
-        Person person = new Person();
-        person.setName("zhangsan");
-        person.setAge(10);
-        person.setCat(new Cat().setAge(1).setName("cat"));
-
-        byte[] encode = encode(person, Cat.class);
-        Person decode = decode(encode, Person.class, Cat.class);
-        System.out.println(decode);
+    private static Pool<Kryo> kryoPool(Class<?> type, Class<?>[] classes) {
+        if (classes == null || classes.length == 0) {
+            return TYPE_POOLS.get(type);
+        }
+        Class<?>[] registered = new Class<?>[classes.length + 1];
+        registered[0] = type;
+        System.arraycopy(classes, 0, registered, 1, classes.length);
+        ClassSet classSet = new ClassSet(registered);
+        Pool<Kryo> pool = CLASS_SET_POOLS.get(classSet);
+        if (pool == null) {
+            pool = newKryoPool(registered);
+            Pool<Kryo> previous = CLASS_SET_POOLS.putIfAbsent(classSet, pool);
+            if (previous != null) {
+                pool = previous;
+            }
+        }
+        return pool;
     }
 
-    static class Person {
-        private String name;
-        private int age;
-        private Cat cat;
-
-        public String getName() {
-            return name;
-        }
-
-        public Person setName(String name) {
-            this.name = name;
-            return this;
-        }
-
-        public int getAge() {
-            return age;
-        }
-
-        public Person setAge(int age) {
-            this.age = age;
-            return this;
-        }
-
-        public Cat getCat() {
-            return cat;
-        }
-
-        public Person setCat(Cat cat) {
-            this.cat = cat;
-            return this;
-        }
-
-        @Override
-        public String toString() {
-            return "Person{" +
-                    "name='" + name + '\'' +
-                    ", age=" + age +
-                    ", cat=" + cat +
-                    '}';
-        }
+    private static Pool<Kryo> newKryoPool(final Class<?>[] registered) {
+        return new Pool<Kryo>(true, false, KryoBufferUtils.POOL_CAPACITY) {
+            @Override
+            protected Kryo create() {
+                Kryo kryo = new Kryo();
+                for (Class<?> aClass : registered) {
+                    kryo.register(aClass);
+                }
+                return kryo;
+            }
+        };
     }
 
-    static class Cat {
-        private String name;
-        private int age;
-
-        public String getName() {
-            return name;
-        }
-
-        public Cat setName(String name) {
-            this.name = name;
-            return this;
-        }
+    /**
+     * Classes in registration order, which decides the ids Kryo writes.
+     */
+    private static final class ClassSet {
+        private final Class<?>[] classes;
+        private final int hash;
 
-        public int getAge() {
-            return age;
+        ClassSet(Class<?>[] classes) {
+            this.classes = classes;
+            this.hash = Arrays.hashCode(classes);
         }
 
-        public Cat setAge(int age) {
-            this.age = age;
-            return this;
+        @Override
+        public int hashCode() {
+            return hash;
         }
 
         @Override
-        public String toString() {
-            return "Person{" +
-                    "name='" + name + '\'' +
-                    ", age=" + age +
-                    '}';
+        public boolean equals(Object o) {
+            return o instanceof ClassSet && Arrays.equals(classes, ((ClassSet) o).classes);
         }
     }
 }
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.remoting.common;
+
+import link.thingscloud.netty.remoting.BaseTest;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public class ResponseTableTest extends BaseTest {
+
+    @Test
+    public void putAndRemove_MatchesHashMap() {
+        ResponseTable table = new ResponseTable(4);
+        Map<Integer, ResponseFuture> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            // Sequential ids around the int overflow mixed with random ones
+            int requestId = random.nextBoolean() ? Integer.MAX_VALUE - 512 + random.nextInt(1024) : random.nextInt(4096);
+            if (random.nextInt(3) == 0) {
+                assertSame(expected.remove(requestId), table.remove(requestId));
+            } else {
+                ResponseFuture future = new ResponseFuture(requestId, 3000);
+                assertSame(expected.put(requestId, future), table.put(requestId, future));
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        for (Map.Entry<Integer, ResponseFuture> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), table.get(entry.getKey()));
+            assertSame(entry.getValue(), table.remove(entry.getKey()));
+        }
+        assertThat(table.isEmpty()).isTrue();
+        assertNull(table.remove(0));
+    }
+
+    @Test
+    public void removeExpired_OnlyTimedOutRemoved() {
+        ResponseTable table = new ResponseTable();
+        for (int i = 0; i < 1000; i++) {
+            table.put(i, new ResponseFuture(i, i % 2 == 0 ? 0 : 60000));
+        }
+
+        assertThat(table.removeExpired(System.currentTimeMillis())).hasSize(500);
+        assertEquals(500, table.size());
+        for (int i = 0; i < 1000; i++) {
+            assertThat(table.get(i) == null).isEqualTo(i % 2 == 0);
+        }
+        assertThat(table.removeExpired(System.currentTimeMillis())).isEmpty();
+    }
+
+    @Test
+    public void putAndRemove_Concurrent() throws InterruptedException {
+        final ResponseTable table = new ResponseTable(2);
+        final AtomicInteger requestIds = new AtomicInteger();
+        final AtomicInteger mismatches = new AtomicInteger();
+        runInThreads(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10000; i++) {
+                    int requestId = requestIds.incrementAndGet();
+                    ResponseFuture future = new ResponseFuture(requestId, 3000);
+                    table.put(requestId, future);
+                    if (table.remove(requestId) != future) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            }
+        }, 8, 30000);
+
+        assertEquals(0, mismatches.get());
+        assertThat(table.isEmpty()).isTrue();
+    }
+}
@@ -52,6 +52,243 @@ public class CodecHelperTest extends BaseTest {
         assertEquals(command, decodedCommand);
     }
 
+    @Test
+    public void encodeAndDecodeCommand_CompactProperties_Success() {
+        RemotingBuffer buffer = new NettyRemotingBuffer(ByteBufAllocator.DEFAULT.heapBuffer());
+        RemotingCommand command = randomRemotingCommand();
+        command.property("traceId", "0af7651916cd43dd8448eb211c80319c");
+
+        FrameLayout layout = CodecHelper.layout(command, command.payload().length, true);
+        CodecHelper.encodeHeader(layout, buffer);
+        buffer.writeBytes(command.payload());
+        assertEquals(layout.frameLength(), buffer.readableBytes());
+
+        assertEquals(PROTOCOL_MAGIC, buffer.readByte());
+        assertEquals(layout.frameLength(), buffer.readInt());
+
+        CodecContext context = new CodecContext();
+        RemotingCommand decodedCommand = CodecHelper.decode(buffer, false, context);
+
+        assertEquals(command, decodedCommand);
+        assertThat(context.compactProperties()).isTrue();
+    }
+
+    @Test
+    public void encodeAndDecodeCommand_IndexedProperties_Success() {
+        PropertyTable encoderTable = PropertyTable.forEncoder(4);
+        CodecContext context = new CodecContext();
+
+        int firstFrameLength = 0;
+        for (int i = 0; i < 16; i++) {
+            RemotingCommand command = new RemotingCommandFactoryImpl().createRequest();
+            command.property("tenant", "thingscloud");
+            command.property("app", "netty-remoting");
+            command.property("traceId", RandomStringUtils.randomAlphanumeric(32));
+            // Rotates through more pairs than the table holds
+            command.property("shard", String.valueOf(i % 3));
+            command.property("token", i < 8 ? "token-a" : "token-b");
+
+            RemotingBuffer buffer = new NettyRemotingBuffer(ByteBufAllocator.DEFAULT.heapBuffer());
+            FrameLayout layout = CodecHelper.layout(command, 0, true, encoderTable);
+            CodecHelper.encodeHeader(layout, buffer);
+            assertEquals(layout.frameLength(), buffer.readableBytes());
+            if (i == 0) {
+                firstFrameLength = layout.frameLength();
+            } else {
+                assertThat(layout.frameLength()).isLessThan(firstFrameLength);
+            }
+
+            buffer.readByte();
+            buffer.readInt();
+            assertEquals(command, CodecHelper.decode(buffer, false, context));
+        }
+        assertEquals(4, context.peerPropertyTableCapacity());
+    }
+
+    @Test
+    public void decodeCommand_IndexedPropertiesWithoutTable_ExceptionThrown() {
+        RemotingBuffer buffer = new NettyRemotingBuffer(ByteBufAllocator.DEFAULT.heapBuffer());
+        RemotingCommand command = new RemotingCommandFactoryImpl().createRequest();
+        command.property("tenant", "thingscloud");
+        CodecHelper.encodeHeader(CodecHelper.layout(command, 0, true, PropertyTable.forEncoder(4)), buffer);
+        buffer.readByte();
+        buffer.readInt();
+
+        try {
+            CodecHelper.decode(buffer);
+            failBecauseExceptionWasNotThrown(RemotingCodecException.class);
+        } catch (Exception e) {
+            assertThat(e).isInstanceOf(RemotingCodecException.class);
+        }
+    }
+
+    @Test
+    public void layout_IndexedPropertiesNotEncoded_TableUnchanged() {
+        PropertyTable encoderTable = PropertyTable.forEncoder(4);
+        CodecContext context = new CodecContext();
+
+        RemotingCommand dropped = new RemotingCommandFactoryImpl().createRequest();
+        dropped.property("tenant", "thingscloud");
+        dropped.property("app", "netty-remoting");
+        CodecHelper.layout(dropped, 0, true, encoderTable);
+        encoderTable.rollback();
+
+        // Announces the table and sends literals as if the dropped frame had not been laid out
+        for (int i = 0; i < 2; i++) {
+            RemotingCommand command = new RemotingCommandFactoryImpl().createRequest();
+            command.property("app", "netty-remoting");
+            command.property("shard", String.valueOf(i));
+
+            RemotingBuffer buffer = new NettyRemotingBuffer(ByteBufAllocator.DEFAULT.heapBuffer());
+            CodecHelper.encodeHeader(CodecHelper.layout(command, 0, true, encoderTable), buffer);
+            buffer.readByte();
+            buffer.readInt();
+            assertEquals(command, CodecHelper.decode(buffer, false, context));
+        }
+        assertEquals(4, context.peerPropertyTableCapacity());
+    }
+
+    @Test
+    public void decodeCommand_CodecProperty_PeerReadsCompact() {
+        RemotingBuffer buffer = new NettyRemotingBuffer(ByteBufAllocator.DEFAULT.heapBuffer());
+        RemotingCommand command = randomRemotingCommand();
+        CodecHelper.encodeHeader(CodecHelper.layout(command, command.payload().length, false, null, true), buffer);
+        buffer.writeBytes(command.payload());
+        buffer.readByte();
+        buffer.readInt();
+
+        CodecContext context = new CodecContext();
+        assertEquals(command, CodecHelper.decode(buffer, false, context));
+        assertThat(context.compactProperties()).isTrue();
+    }
+
+    @Test
+    public void encodeAndDecodeCommandV2_Success() {
+        RemotingBuffer buffer = new NettyRemotingBuffer(ByteBufAllocator.DEFAULT.heapBuffer());
+        RemotingCommand command = randomRemotingCommand();
+        command.requestID(-1);
+
+        FrameLayout layout = CodecHelper.layoutV2(command, command.payload().length, 0, null);
+        CodecHelper.encodeHeader(layout, buffer);
+        buffer.writeBytes(command.payload());
+        assertEquals(layout.frameLength(), buffer.readableBytes());
+
+        assertEquals(PROTOCOL_MAGIC_V2, buffer.readByte());
+        assertEquals(0, buffer.readByte());
+        int frameLength = CodecHelper.readFrameLength(buffer);
+        assertEquals(buffer.readableBytes(), frameLength);
+
+        RemotingCommand decodedCommand = CodecHelper.decodeV2(buffer, 0, false, null);
+        assertEquals(command, decodedCommand);
+        assertEquals(0, buffer.readableBytes());
+    }
+
+    @Test
+    public void decodeCommandV2_CorruptedCompressedPayload_ExceptionThrown() {
+        RemotingBuffer buffer = new NettyRemotingBuffer(ByteBufAllocator.DEFAULT.heapBuffer());
+        RemotingCommand command = new RemotingCommandFactoryImpl().createRequest();
+
+        // Uncompressed length 100 followed by bytes which are no deflate data
+        FrameLayout layout = CodecHelper.layoutV2(command, 5, CodecHelper.FLAG_COMPRESSED, null);
+        CodecHelper.encodeHeader(layout, buffer);
+        CodecHelper.writeVarInt(100, buffer);
+        buffer.writeBytes(new byte[]{-1, -1, -1, -1});
+
+        buffer.readByte();
+        int flags = buffer.readByte();
+        CodecHelper.readFrameLength(buffer);
+        try {
+            CodecHelper.decodeV2(buffer, flags, false, null);
+            failBecauseExceptionWasNotThrown(RemotingCodecException.class);
+        } catch (Exception e) {
+            assertThat(e).isInstanceOf(RemotingCodecException.class);
+        }
+    }
+
+    @Test
+    public void decodeCommandV2_CmdCodeOverShort_ExceptionThrown() {
+        RemotingBuffer buffer = new NettyRemotingBuffer(ByteBufAllocator.DEFAULT.heapBuffer());
+        // Cmd code 0x10000, which a short cannot hold
+        CodecHelper.writeVarInt(0x10000, buffer);
+        buffer.writeBytes(new byte[16]);
+        try {
+            CodecHelper.decodeV2(buffer, 0, false, null);
+            failBecauseExceptionWasNotThrown(RemotingCodecException.class);
+        } catch (Exception e) {
+            assertThat(e).isInstanceOf(RemotingCodecException.class).hasMessageContaining("Cmd code");
+        }
+    }
+
+    @Test
+    public void decodeCommandV2_UncompressedLenOverRatio_ExceptionThrown() {
+        RemotingBuffer buffer = new NettyRemotingBuffer(ByteBufAllocator.DEFAULT.heapBuffer());
+        RemotingCommand command = new RemotingCommandFactoryImpl().createRequest();
+
+        // A few bytes which claim to inflate to the largest payload
+        FrameLayout layout = CodecHelper.layoutV2(command, 8, CodecHelper.FLAG_COMPRESSED, null);
+        CodecHelper.encodeHeader(layout, buffer);
+        CodecHelper.writeVarInt(CodecHelper.PAYLOAD_MAX_LEN, buffer);
+        buffer.writeBytes(new byte[]{-1, -1, -1, -1});
+
+        buffer.readByte();
+        int flags = buffer.readByte();
+        CodecHelper.readFrameLength(buffer);
+        try {
+            CodecHelper.decodeV2(buffer, flags, false, null);
+            failBecauseExceptionWasNotThrown(RemotingCodecException.class);
+        } catch (Exception e) {
+            assertThat(e).isInstanceOf(RemotingCodecException.class).hasMessageContaining("ratio");
+        }
+    }
+
+    @Test
+    public void encodeCommandV2_SmallMessage_ShorterHeader() {
+        RemotingCommand command = new RemotingCommandFactoryImpl().createRequest();
+        command.cmdCode((short) 1);
+        command.requestID(100);
+
+        FrameLayout v1 = CodecHelper.layout(command, 16);
+        FrameLayout v2 = CodecHelper.layoutV2(command, 16, 0, null);
+        assertEquals(MIN_PROTOCOL_LEN, v1.headerLength());
+        assertThat(v2.headerLength()).isLessThanOrEqualTo(MIN_PROTOCOL_LEN / 2);
+    }
+
+    @Test
+    public void writeAndReadVarInt_Success() {
+        RemotingBuffer buffer = new NettyRemotingBuffer(ByteBufAllocator.DEFAULT.heapBuffer());
+        int[] values = {0, 1, 127, 128, 16383, 16384, 2097151, 2097152, Integer.MAX_VALUE, -1};
+        for (int value : values) {
+            CodecHelper.writeVarInt(value, buffer);
+            assertEquals(CodecHelper.varIntSize(value), buffer.readableBytes());
+            assertEquals(value, CodecHelper.readVarInt(buffer));
+        }
+    }
+
+    @Test
+    public void encodeAndDecodePayload_Success() {
+        Cat cat = new Cat();
+        cat.name = "cat";
+        cat.age = 1;
+        byte[] encoded = CodecHelper.encodePayload(cat);
+        Cat decodedCat = CodecHelper.decodePayload(encoded, Cat.class);
+        assertEquals(cat.name, decodedCat.name);
+        assertEquals(cat.age, decodedCat.age);
+
+        Person person = new Person();
+        person.name = RandomStringUtils.randomAlphanumeric(4096);
+        person.cat = cat;
+        for (int i = 0; i < 2; i++) {
+            encoded = CodecHelper.encodePayload(person, Cat.class);
+            assertThat(encoded.length).isGreaterThan(4096).isLessThan(4096 + 32);
+            Person decodedPerson = CodecHelper.decodePayload(encoded, Person.class, Cat.class);
+            assertEquals(person.name, decodedPerson.name);
+            assertEquals(cat.name, decodedPerson.cat.name);
+        }
+
+        assertThat(CodecHelper.encodePayload(null)).isNull();
+        assertThat(CodecHelper.decodePayload(new byte[0], Cat.class)).isNull();
+    }
+
     @Test
     public void encodeCommand_LenOverLimit_ExceptionThrown() {
         RemotingBuffer buffer = new NettyRemotingBuffer(ByteBufAllocator.DEFAULT.heapBuffer());
@@ -138,4 +375,14 @@ public class CodecHelperTest extends BaseTest {
             assertThat(e).isInstanceOf(RemotingCodecException.class);
         }
     }
-}
\ No newline at end of file
+
+    public static class Person {
+        private String name;
+        private Cat cat;
+    }
+
+    public static class Cat {
+        private String name;
+        private int age;
+    }
+}
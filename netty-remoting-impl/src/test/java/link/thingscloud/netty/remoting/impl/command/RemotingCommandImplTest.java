@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.thingscloud.netty.remoting.impl.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import link.thingscloud.netty.remoting.api.command.RemotingCommand;
+import link.thingscloud.netty.remoting.api.command.SerializableType;
+import link.thingscloud.netty.remoting.impl.netty.handler.Decoder;
+import link.thingscloud.netty.remoting.impl.netty.handler.Encoder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author zhouhailin
+ * @since 0.8.0
+ */
+public class RemotingCommandImplTest {
+
+    @Test
+    public void payloadAs_DeserializedOnce() {
+        HashMap<String, String> payloadObject = new HashMap<>();
+        payloadObject.put("key", "value");
+
+        for (boolean zeroCopy : Arrays.asList(true, false)) {
+            EmbeddedChannel client = new EmbeddedChannel(new Encoder());
+            EmbeddedChannel server = new EmbeddedChannel(new Decoder(zeroCopy));
+
+            RemotingCommand request = new RemotingCommandFactoryImpl().createRequest();
+            request.serializableType(SerializableType.Kryo);
+            request.payloadObject(payloadObject);
+            assertThat(request.payloadAs(HashMap.class)).isSameAs(payloadObject);
+
+            client.writeOutbound(request);
+            server.writeInbound((ByteBuf) client.readOutbound());
+            RemotingCommandImpl decodedRequest = server.readInbound();
+            try {
+                HashMap<?, ?> decoded = decodedRequest.payloadAs(HashMap.class);
+                assertThat(decoded).isEqualTo(payloadObject);
+                assertThat(decodedRequest.payloadAs(HashMap.class)).isSameAs(decoded);
+                assertThat(decodedRequest.payloadAs(Object.class)).isSameAs(decoded);
+
+                decodedRequest.serializableType(SerializableType.Kryo);
+                assertThat(decodedRequest.payloadAs(HashMap.class)).isNotSameAs(decoded).isEqualTo(payloadObject);
+
+                decodedRequest.payload(null);
+                assertThat(decodedRequest.payloadAs(HashMap.class)).isNull();
+            } finally {
+                decodedRequest.release();
+                client.finishAndReleaseAll();
+                server.finishAndReleaseAll();
+            }
+        }
+    }
+}
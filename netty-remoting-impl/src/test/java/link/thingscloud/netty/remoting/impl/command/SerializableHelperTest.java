@@ -17,18 +17,32 @@
 
 package link.thingscloud.netty.remoting.impl.command;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import junit.framework.TestCase;
+import link.thingscloud.netty.remoting.api.command.RemotingCommand;
 import link.thingscloud.netty.remoting.api.command.SerializableType;
+import link.thingscloud.netty.remoting.api.command.Serializer;
+import link.thingscloud.netty.remoting.api.exception.RemotingSerializableException;
 import lombok.Data;
 import lombok.experimental.Accessors;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author zhouhailin
@@ -96,6 +110,24 @@ public class SerializableHelperTest extends TestCase {
         assertEquals(obj.toString(), deserialize.toString());
     }
 
+    public void testSerializeJSONB() {
+        Object obj = newObject();
+        byte[] serialize = SerializableHelper.serialize(SerializableType.JSONB, obj);
+        Person deserialize = SerializableHelper.deserialize(SerializableType.JSONB, serialize, Person.class);
+        assertNotNull(deserialize);
+        assertEquals(obj.toString(), deserialize.toString());
+
+        SerializableHelper.jsonbSymbols("name", "int1", "age", "timeMillis", "sex", "map1", "child");
+        try {
+            byte[] serializeWithSymbols = SerializableHelper.serialize(SerializableType.JSONB, obj);
+            assertTrue(serializeWithSymbols.length < serialize.length);
+            deserialize = SerializableHelper.deserialize(SerializableType.JSONB, serializeWithSymbols, Person.class);
+            assertEquals(obj.toString(), deserialize.toString());
+        } finally {
+            SerializableHelper.jsonbSymbols();
+        }
+    }
+
     public void testSerializeKryo() {
         Object obj = newObject();
         // System.out.println(obj);
@@ -106,6 +138,91 @@ public class SerializableHelperTest extends TestCase {
         assertEquals(obj.toString(), deserialize.toString());
     }
 
+    public void testSerializeKryo_LargeObject() {
+        Map<String, Object> map1 = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            map1.put("key" + i, "value" + i);
+        }
+        Person obj = ((Person) newObject()).setMap1(map1);
+        byte[] serialize = SerializableHelper.serialize(SerializableType.Kryo, obj);
+        assertTrue(serialize.length > 1024);
+        Person deserialize = SerializableHelper.deserialize(SerializableType.Kryo, serialize, Person.class);
+        assertEquals(obj.toString(), deserialize.toString());
+    }
+
+    public void testSerializeKryo_Concurrent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int j = 0; j < 100; j++) {
+                            Object obj = newObject();
+                            byte[] serialize = SerializableHelper.serialize(SerializableType.Kryo, obj);
+                            Person deserialize = SerializableHelper.deserialize(SerializableType.Kryo, serialize, Person.class);
+                            if (!obj.toString().equals(deserialize.toString())) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testRegister() {
+        SerializableHelper.register(Person.class);
+        assertTrue(SerializableHelper.KryoSerializer.KRYO_COLLECTED.contains(Person.class));
+        assertTrue(SerializableHelper.KryoSerializer.KRYO_COLLECTED.contains(Child.class));
+        assertTrue(SerializableHelper.FurySerializer.FURY_REGISTER.contains(Child.class));
+
+        int registered = SerializableHelper.KryoSerializer.KRYO_REGISTER.size();
+        testSerializeKryo();
+        assertEquals(registered, SerializableHelper.KryoSerializer.KRYO_REGISTER.size());
+    }
+
+    public void testRegisterSerializer() {
+        SerializableHelper.registerSerializer(new Serializer() {
+            @Override
+            public int typeId() {
+                return 100;
+            }
+
+            @Override
+            public byte[] serialize(Object obj) {
+                return String.valueOf(obj).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public <T> T deserialize(byte[] data, Class<T> classOfT) {
+                return classOfT.cast(new String(data, StandardCharsets.UTF_8));
+            }
+        });
+        byte[] serialize = SerializableHelper.serialize(100, "hello");
+        assertEquals("hello", SerializableHelper.deserialize(100, serialize, String.class));
+        assertEquals("hello", SerializableHelper.deserialize(100, Unpooled.wrappedBuffer(serialize), String.class));
+
+        RemotingCommand command = new RemotingCommandFactoryImpl().createRequest();
+        command.serializableTypeId(100);
+        command.payloadObject("hello");
+        assertNull(command.serializableType());
+        assertEquals("hello", new String(command.payload(), StandardCharsets.UTF_8));
+
+        try {
+            SerializableHelper.serialize(101, "hello");
+            fail("RemotingSerializableException expected");
+        } catch (RemotingSerializableException expected) {
+        }
+    }
+
     public void testSerializeFury() {
         Object obj = newObject();
         // System.out.println(obj);
@@ -116,6 +233,85 @@ public class SerializableHelperTest extends TestCase {
         assertEquals(obj.toString(), deserialize.toString());
     }
 
+    public void testSerializeFury_IntoByteBuf() {
+        Map<String, Object> map1 = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map1.put("key" + i, "value" + i);
+        }
+        Person small = (Person) newObject();
+        Person large = ((Person) newObject()).setMap1(map1);
+        for (Person obj : new Person[]{small, large}) {
+            for (ByteBuf out : new ByteBuf[]{Unpooled.buffer(0), Unpooled.directBuffer(0), Unpooled.compositeBuffer()}) {
+                // Appends after what the buffer holds already
+                out.writeByte(7);
+                SerializableHelper.serialize(SerializableType.Fury, obj, out);
+                assertEquals(7, out.readByte());
+                Person deserialize = SerializableHelper.deserialize(SerializableType.Fury, out, Person.class);
+                assertEquals(obj.toString(), deserialize.toString());
+                out.release();
+            }
+        }
+    }
+
+    public void testSerializeFury_Concurrent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int j = 0; j < 100; j++) {
+                            Object obj = newObject();
+                            byte[] serialize = SerializableHelper.serialize(SerializableType.Fury, obj);
+                            Person deserialize = SerializableHelper.deserialize(SerializableType.Fury, serialize, Person.class);
+                            if (!obj.toString().equals(deserialize.toString())) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testSerializeJSONB_IntoByteBuf() {
+        Object obj = newObject();
+        byte[] serialize = SerializableHelper.serialize(SerializableType.JSONB, obj);
+        ByteBuf out = Unpooled.buffer(0);
+        SerializableHelper.serialize(SerializableType.JSONB, obj, out);
+        assertEquals(Unpooled.wrappedBuffer(serialize), out);
+
+        SerializableHelper.jsonbSymbols("name", "int1", "age", "timeMillis", "sex", "map1", "child");
+        try {
+            serialize = SerializableHelper.serialize(SerializableType.JSONB, obj);
+            out.clear();
+            SerializableHelper.serialize(SerializableType.JSONB, obj, out);
+            assertEquals(Unpooled.wrappedBuffer(serialize), out);
+            assertEquals(obj.toString(), SerializableHelper.deserialize(SerializableType.JSONB, out, Person.class).toString());
+        } finally {
+            SerializableHelper.jsonbSymbols();
+        }
+    }
+
+    public void testPayloadObject_SerializedOnce() {
+        RemotingCommand command = new RemotingCommandFactoryImpl().createRequest();
+        command.payloadObject(newObject());
+        byte[] payload = command.payload();
+        assertSame(payload, command.payload());
+
+        command.serializableType(SerializableType.Kryo);
+        assertNotSame(payload, command.payload());
+        assertEquals(command.payloadObject().toString(),
+                SerializableHelper.deserialize(SerializableType.Kryo, command.payload(), Person.class).toString());
+    }
+
     public void testSerializeHessian() {
         Object obj = newObject();
         // System.out.println(obj);
@@ -126,6 +322,40 @@ public class SerializableHelperTest extends TestCase {
         assertEquals(obj.toString(), deserialize.toString());
     }
 
+    public void testSerializeHessian_StreamsReused() {
+        Object person = newObject();
+        Object child = ((Person) person).getChild();
+        byte[] serializePerson = SerializableHelper.serialize(SerializableType.Hessian, person);
+        byte[] serializeChild = SerializableHelper.serialize(SerializableType.Hessian, child);
+        // Every payload carries its own class definitions and references
+        assertEquals(child.toString(), SerializableHelper.deserialize(SerializableType.Hessian, serializeChild, Child.class).toString());
+        assertEquals(person.toString(), SerializableHelper.deserialize(SerializableType.Hessian, serializePerson, Person.class).toString());
+        assertTrue(Arrays.equals(serializeChild, SerializableHelper.serialize(SerializableType.Hessian, child)));
+    }
+
+    public void testSerializeHessian_TrailingBytesNotCarriedOver() {
+        byte[] hello = SerializableHelper.serialize(SerializableType.Hessian, "hello");
+        byte[] trailing = Arrays.copyOf(hello, hello.length + 3);
+        assertEquals("hello", SerializableHelper.deserialize(SerializableType.Hessian, trailing, String.class));
+
+        byte[] world = SerializableHelper.serialize(SerializableType.Hessian, "world");
+        assertEquals("world", SerializableHelper.deserialize(SerializableType.Hessian, world, String.class));
+    }
+
+    public void testSerializeHessian_TruncatedPayloadNotCarriedOver() {
+        Object obj = newObject();
+        byte[] serialize = SerializableHelper.serialize(SerializableType.Hessian, obj);
+        try {
+            SerializableHelper.deserialize(SerializableType.Hessian, Arrays.copyOf(serialize, serialize.length / 2), Person.class);
+            fail("Exception expected");
+        } catch (RuntimeException expected) {
+        }
+
+        byte[] world = SerializableHelper.serialize(SerializableType.Hessian, "world");
+        assertEquals("world", SerializableHelper.deserialize(SerializableType.Hessian, world, String.class));
+        assertEquals(obj.toString(), SerializableHelper.deserialize(SerializableType.Hessian, serialize, Person.class).toString());
+    }
+
     public void testSerializeJdk() {
         Object obj = newObject();
         // System.out.println(obj);
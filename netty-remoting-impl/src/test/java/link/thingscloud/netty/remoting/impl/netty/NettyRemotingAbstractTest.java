@@ -20,6 +20,8 @@ package link.thingscloud.netty.remoting.impl.netty;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
 import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.AttributeKey;
+import io.netty.util.DefaultAttributeMap;
 import link.thingscloud.netty.remoting.BaseTest;
 import link.thingscloud.netty.remoting.api.AsyncHandler;
 import link.thingscloud.netty.remoting.api.RemotingEndPoint;
@@ -28,12 +30,15 @@ import link.thingscloud.netty.remoting.api.channel.ChannelEventListener;
 import link.thingscloud.netty.remoting.api.channel.RemotingChannel;
 import link.thingscloud.netty.remoting.api.command.RemotingCommand;
 import link.thingscloud.netty.remoting.api.exception.RemotingAccessException;
+import link.thingscloud.netty.remoting.api.exception.RemotingSerializableException;
 import link.thingscloud.netty.remoting.api.exception.RemotingTimeoutException;
 import link.thingscloud.netty.remoting.api.exception.SemaphoreExhaustedException;
 import link.thingscloud.netty.remoting.api.interceptor.Interceptor;
 import link.thingscloud.netty.remoting.api.interceptor.RequestContext;
 import link.thingscloud.netty.remoting.api.interceptor.ResponseContext;
+import link.thingscloud.netty.remoting.common.ResponseFuture;
 import link.thingscloud.netty.remoting.config.RemotingConfig;
+import link.thingscloud.netty.remoting.config.RemotingServerConfig;
 import link.thingscloud.netty.remoting.external.ThreadUtils;
 import link.thingscloud.netty.remoting.impl.channel.NettyChannelImpl;
 import link.thingscloud.netty.remoting.impl.command.RemotingSysResponseCode;
@@ -44,8 +49,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -53,6 +64,7 @@ import java.util.concurrent.TimeUnit;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -98,6 +110,14 @@ public class NettyRemotingAbstractTest extends BaseTest {
         remotingAbstract = new NettyRemotingAbstract(remotingConfig) {
         };
 
+        final DefaultAttributeMap attributes = new DefaultAttributeMap();
+        lenient().when(mockedClientChannel.attr(any(AttributeKey.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                return attributes.attr(invocation.<AttributeKey<Object>>getArgument(0));
+            }
+        });
+
         clientChannel = new EmbeddedChannel(new Encoder(), new Decoder(), new SimpleChannelInboundHandler<RemotingCommand>() {
 
             @Override
@@ -239,8 +259,34 @@ public class NettyRemotingAbstractTest extends BaseTest {
     }
 
     @Test
-    public void scanResponseTable_RemoveTimeoutRequest() throws InterruptedException {
-        final ObjectFuture<Throwable> objectFuture = newObjectFuture(1, 100);
+    public void scanResponseTable_RemoveTimeoutRequest() {
+        final ObjectFuture<Throwable> objectFuture = newObjectFuture(1, 1000);
+
+        // Expired as soon as it is added, and never scheduled on the timeout timer
+        RemotingCommand request = remotingAbstract.commandFactory().createRequest();
+        ResponseFuture responseFuture = new ResponseFuture(request.requestID(), 0, new AsyncHandler() {
+            @Override
+            public void onFailure(final RemotingCommand request, final Throwable cause) {
+                objectFuture.putObject(cause);
+                objectFuture.release();
+            }
+
+            @Override
+            public void onSuccess(final RemotingCommand response) {
+
+            }
+        }, null);
+        responseFuture.setRequestCommand(request);
+        remotingAbstract.addResponseFuture(new EmbeddedChannel(), responseFuture);
+
+        remotingAbstract.scanResponseTable();
+
+        assertThat(objectFuture.getObject()).isInstanceOf(RemotingTimeoutException.class);
+    }
+
+    @Test
+    public void invokeAsyncWithInterceptor_TimeoutWithoutScan() {
+        final ObjectFuture<Throwable> objectFuture = newObjectFuture(1, 1000);
 
         remotingAbstract.invokeAsyncWithInterceptor(new EmbeddedChannel(),
                 remotingAbstract.commandFactory().createRequest(),
@@ -255,14 +301,54 @@ public class NettyRemotingAbstractTest extends BaseTest {
                     public void onSuccess(final RemotingCommand response) {
 
                     }
-                }, 100);
-
-        TimeUnit.MILLISECONDS.sleep(15);
-        remotingAbstract.scanResponseTable();
+                }, 50);
 
         assertThat(objectFuture.getObject()).isInstanceOf(RemotingTimeoutException.class);
     }
 
+    @Test
+    public void failInFlightRequests_ChannelClosed() throws InterruptedException {
+        final ObjectFuture<Throwable> objectFuture = newObjectFuture(semaphoreNum, 1000);
+        EmbeddedChannel channel = new EmbeddedChannel();
+
+        for (int i = 0; i < semaphoreNum; i++) {
+            remotingAbstract.invokeAsyncWithInterceptor(channel, remotingAbstract.commandFactory().createRequest(),
+                    new AsyncHandler() {
+                        @Override
+                        public void onFailure(final RemotingCommand request, final Throwable cause) {
+                            objectFuture.putObject(cause);
+                            objectFuture.release();
+                        }
+
+                        @Override
+                        public void onSuccess(final RemotingCommand response) {
+
+                        }
+                    }, 60000);
+        }
+
+        channel.close();
+        remotingAbstract.failInFlightRequests(channel);
+        assertThat(objectFuture.getObject()).isInstanceOf(RemotingAccessException.class);
+
+        // The permits are back, requests on other channels are not starved
+        TimeUnit.MILLISECONDS.sleep(50);
+        registerNormalProcessor();
+        final ObjectFuture<RemotingCommand> responseFuture = newObjectFuture(1, 1000);
+        remotingAbstract.invokeAsyncWithInterceptor(clientChannel, remotingRequest, new AsyncHandler() {
+            @Override
+            public void onFailure(final RemotingCommand request, final Throwable cause) {
+            }
+
+            @Override
+            public void onSuccess(final RemotingCommand response) {
+                responseFuture.putObject(response);
+                responseFuture.release();
+            }
+        }, 3000);
+        assertThat(new String(responseFuture.getObject().payload())).isEqualTo("Pong");
+    }
+
     @Test
     public void invokeWithInterceptor_Success() {
         registerNormalProcessor();
@@ -322,6 +408,31 @@ public class NettyRemotingAbstractTest extends BaseTest {
         assertThat(new String(objectFuture.getObject().payload())).isEqualTo("Pong");
     }
 
+    @Test
+    public void invokeAsyncWithInterceptor_CompletableFuture_Success() throws Exception {
+        registerNormalProcessor();
+
+        CompletableFuture<RemotingCommand> future = remotingAbstract.invokeAsyncWithInterceptor(clientChannel,
+                remotingRequest, 3000, false);
+        assertThat(new String(future.get(3000, TimeUnit.MILLISECONDS).payload())).isEqualTo("Pong");
+
+        future = remotingAbstract.invokeAsyncWithInterceptor(clientChannel, remotingRequestAsync, 3000, true);
+        assertThat(new String(future.get(3000, TimeUnit.MILLISECONDS).payload())).isEqualTo("Pong");
+    }
+
+    @Test
+    public void invokeAsyncWithInterceptor_CompletableFuture_Timeout() throws Exception {
+        CompletableFuture<RemotingCommand> future = remotingAbstract.invokeAsyncWithInterceptor(new EmbeddedChannel(),
+                remotingAbstract.commandFactory().createRequest(), 50, true);
+
+        try {
+            future.get(1000, TimeUnit.MILLISECONDS);
+            failBecauseExceptionWasNotThrown(ExecutionException.class);
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(RemotingTimeoutException.class);
+        }
+    }
+
     @Test
     public void invokeAsyncWithInterceptor_SemaphoreExhausted() {
         registerTimeoutProcessor(1000);
@@ -440,6 +551,49 @@ public class NettyRemotingAbstractTest extends BaseTest {
         assertThat(response.opCode()).isEqualTo(RemotingSysResponseCode.REQUEST_CODE_NOT_SUPPORTED);
     }
 
+    @Test
+    public void start_WarmUpSerializers() {
+        RemotingConfig remotingConfig = new RemotingConfig() {
+            @Override
+            public int getOnewayInvokeSemaphore() {
+                return semaphoreNum;
+            }
+
+            @Override
+            public int getAsyncInvokeSemaphore() {
+                return semaphoreNum;
+            }
+        };
+        remotingConfig.setSerializableClasses(Collections.singletonList(UUID.class.getName()));
+        NettyRemotingAbstract remoting = new NettyRemotingAbstract(remotingConfig) {
+        };
+        assertThat(remoting.serializableWarmUpMillis()).isEqualTo(-1);
+
+        remoting.start();
+        try {
+            assertThat(remoting.serializableWarmUpMillis()).isGreaterThanOrEqualTo(0);
+        } finally {
+            remoting.stop();
+        }
+    }
+
+    @Test
+    public void start_WarmUpAsync_ClassesRegisteredBeforeReturn() {
+        RemotingConfig remotingConfig = new RemotingServerConfig();
+        remotingConfig.setSerializableClasses(Collections.singletonList("link.thingscloud.NoSuchClass"));
+        remotingConfig.setSerializableWarmUpAsync(true);
+        NettyRemotingAbstract remoting = new NettyRemotingAbstract(remotingConfig) {
+        };
+        try {
+            remoting.start();
+            failBecauseExceptionWasNotThrown(RemotingSerializableException.class);
+        } catch (RemotingSerializableException e) {
+            assertThat(e).hasCauseInstanceOf(ClassNotFoundException.class);
+        } finally {
+            remoting.stop();
+        }
+    }
+
     @Test
     public void processor() {
         registerNormalProcessor();
@@ -449,6 +603,18 @@ public class NettyRemotingAbstractTest extends BaseTest {
         assertThat(remotingAbstract.processor((short) (requestCode + 1))).isNull();
     }
 
+    @Test
+    public void registerRequestProcessor_NegativeCode_FirstProcessorKept() {
+        RequestProcessor first = mock(RequestProcessor.class);
+        remotingAbstract.registerRequestProcessor((short) -1, first);
+        remotingAbstract.registerRequestProcessor((short) -1, mock(RequestProcessor.class));
+        assertThat(remotingAbstract.processor((short) -1).getLeft()).isSameAs(first);
+        assertThat(remotingAbstract.processor(Short.MAX_VALUE)).isNull();
+
+        remotingAbstract.unregisterRequestProcessor((short) -1);
+        assertThat(remotingAbstract.processor((short) -1)).isNull();
+    }
+
     @Test
     public void registerRequestProcessor_SpecificExecutor() {
         ExecutorService executor = ThreadUtils.newSingleThreadExecutor("CustomThread", true);
@@ -19,13 +19,29 @@ package link.thingscloud.netty.remoting.impl.netty.handler;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.embedded.EmbeddedChannel;
 import link.thingscloud.netty.remoting.BaseTest;
+import link.thingscloud.netty.remoting.config.RemotingClientConfig;
+import link.thingscloud.netty.remoting.config.RemotingServerConfig;
 import link.thingscloud.netty.remoting.api.command.RemotingCommand;
+import link.thingscloud.netty.remoting.api.command.SerializableType;
+import link.thingscloud.netty.remoting.api.command.TrafficType;
+import link.thingscloud.netty.remoting.impl.buffer.NettyRemotingBuffer;
 import link.thingscloud.netty.remoting.impl.command.CodecHelper;
+import link.thingscloud.netty.remoting.impl.command.RemotingCommandFactoryImpl;
+import link.thingscloud.netty.remoting.impl.command.RemotingCommandImpl;
+import link.thingscloud.netty.remoting.impl.command.SerializableHelper;
+import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Test;
 
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Fail.failBecauseExceptionWasNotThrown;
@@ -53,6 +69,477 @@ public class DecoderTest extends BaseTest {
         assertEquals(request, decodedRequest);
     }
 
+    @Test
+    public void decode_CompactProperties_EncoderFollowsPeer() {
+        EmbeddedChannel client = new EmbeddedChannel(new Encoder(true), new Decoder());
+        EmbeddedChannel server = new EmbeddedChannel(new Encoder(), new Decoder());
+
+        RemotingCommand request = new RemotingCommandFactoryImpl().createRequest();
+        for (int i = 0; i < 16; i++) {
+            request.property("key" + i, RandomStringUtils.randomAlphanumeric(16));
+        }
+        server.writeOutbound(request);
+        ByteBuf legacyFrame = server.readOutbound();
+
+        // Legacy properties until the peer has answered the advertisement
+        client.writeOutbound(request);
+        ByteBuf advertisingFrame = client.readOutbound();
+        assertThat(propertiesSize(advertisingFrame)).isEqualTo((short) 17);
+        assertThat(advertisingFrame.readableBytes()).isGreaterThan(legacyFrame.readableBytes());
+        legacyFrame.release();
+
+        server.writeInbound(advertisingFrame);
+        RemotingCommand decodedRequest = server.readInbound();
+        assertEquals(request, decodedRequest);
+
+        server.writeOutbound(decodedRequest);
+        ByteBuf responseFrame = server.readOutbound();
+        assertThat(propertiesSize(responseFrame)).isNegative();
+        client.writeInbound(responseFrame);
+        assertEquals(request, client.readInbound());
+
+        client.writeOutbound(request);
+        ByteBuf compactFrame = client.readOutbound();
+        assertThat(propertiesSize(compactFrame)).isNegative();
+        server.writeInbound(compactFrame);
+        assertEquals(request, server.readInbound());
+    }
+
+    @Test
+    public void decode_CompactPropertiesLegacyPeer_NeverSent() {
+        EmbeddedChannel client = new EmbeddedChannel(new Encoder(true, 64), new Decoder());
+
+        RemotingCommand request = new RemotingCommandFactoryImpl().createRequest();
+        request.property("tenant", "thingscloud");
+        for (int i = 0; i < 4; i++) {
+            client.writeOutbound(request);
+            ByteBuf requestFrame = client.readOutbound();
+            // The property and the advertisement
+            assertThat(propertiesSize(requestFrame)).isEqualTo((short) 2);
+
+            // A peer before 0.8.0 answers in the legacy format
+            requestFrame.skipBytes(5);
+            RemotingCommand decodedRequest = CodecHelper.decode(new NettyRemotingBuffer(requestFrame));
+            requestFrame.release();
+            ByteBuf responseFrame = Unpooled.buffer();
+            CodecHelper.encodeCommand(decodedRequest, new NettyRemotingBuffer(responseFrame));
+            client.writeInbound(responseFrame);
+            assertEquals(request, client.readInbound());
+        }
+    }
+
+    @Test
+    public void decode_IndexedProperties_EncoderFollowsPeer() {
+        EmbeddedChannel client = new EmbeddedChannel(new Encoder(false, 64), new Decoder());
+        EmbeddedChannel server = new EmbeddedChannel(new Encoder(), new Decoder());
+
+        int firstFrameLength = 0;
+        for (int i = 0; i < 4; i++) {
+            RemotingCommand request = new RemotingCommandFactoryImpl().createRequest();
+            for (int j = 0; j < 16; j++) {
+                request.property("key" + j, "value" + j);
+            }
+
+            // The first frame asks for the compact format, the second fills the tables
+            client.writeOutbound(request);
+            ByteBuf requestFrame = client.readOutbound();
+            if (i == 0) {
+                assertThat(propertiesSize(requestFrame)).isPositive();
+                firstFrameLength = requestFrame.readableBytes();
+            } else if (i > 1) {
+                assertThat(requestFrame.readableBytes()).isLessThan(firstFrameLength / 2);
+            }
+
+            server.writeInbound(requestFrame);
+            RemotingCommand decodedRequest = server.readInbound();
+            assertEquals(request, decodedRequest);
+
+            server.writeOutbound(decodedRequest);
+            ByteBuf responseFrame = server.readOutbound();
+            if (i > 1) {
+                assertThat(responseFrame.readableBytes()).isLessThan(firstFrameLength / 2);
+            }
+            client.writeInbound(responseFrame);
+            assertEquals(request, client.readInbound());
+        }
+    }
+
+    @Test
+    public void decode_ProtocolV2_EncoderFollowsPeer() {
+        RemotingClientConfig clientConfig = new RemotingClientConfig();
+        clientConfig.setProtocolVersion(CodecHelper.PROTOCOL_VERSION_2);
+        EmbeddedChannel client = new EmbeddedChannel(new Encoder(clientConfig), new Decoder());
+        EmbeddedChannel server = new EmbeddedChannel(new Encoder(new RemotingServerConfig()), new Decoder());
+
+        RemotingCommand request = randomRemotingCommand();
+        client.writeOutbound(request);
+        ByteBuf requestFrame = client.readOutbound();
+        assertEquals(CodecHelper.PROTOCOL_MAGIC_V2, requestFrame.getByte(0));
+
+        // Deliver the frame in two parts
+        server.writeInbound(requestFrame.readRetainedSlice(3));
+        assertThat((Object) server.readInbound()).isNull();
+        server.writeInbound(requestFrame);
+        RemotingCommand decodedRequest = server.readInbound();
+        assertEquals(request, decodedRequest);
+
+        server.writeOutbound(decodedRequest);
+        ByteBuf responseFrame = server.readOutbound();
+        assertEquals(CodecHelper.PROTOCOL_MAGIC_V2, responseFrame.getByte(0));
+        client.writeInbound(responseFrame);
+        assertEquals(request, client.readInbound());
+    }
+
+    @Test
+    public void decode_CompressedPayload_Success() {
+        RemotingClientConfig clientConfig = new RemotingClientConfig();
+        clientConfig.setProtocolVersion(CodecHelper.PROTOCOL_VERSION_2);
+        clientConfig.setCompressionThreshold(1024);
+        EmbeddedChannel client = new EmbeddedChannel(new Encoder(clientConfig), new Decoder());
+        EmbeddedChannel server = new EmbeddedChannel(new Encoder(new RemotingServerConfig()), new Decoder(true));
+
+        RemotingCommand request = new RemotingCommandFactoryImpl().createRequest();
+        request.cmdCode((short) 1);
+        request.property("key", "value");
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 256; i++) {
+            payload.append("{\"id\":").append(i).append(",\"name\":\"remoting\"}");
+        }
+        request.payload(payload.toString().getBytes());
+
+        client.writeOutbound(request);
+        ByteBuf requestFrame = client.readOutbound();
+        assertEquals(CodecHelper.FLAG_COMPRESSED, requestFrame.getByte(1));
+        assertThat(requestFrame.readableBytes()).isLessThan(request.payload().length);
+
+        server.writeInbound(requestFrame);
+        RemotingCommandImpl decodedRequest = server.readInbound();
+        assertThat(decodedRequest.compressed()).isTrue();
+        assertThat(decodedRequest.payloadBuffer()).isNotNull();
+        assertEquals(request, decodedRequest);
+        assertThat(decodedRequest.payload()).isEqualTo(request.payload());
+        assertThat(decodedRequest.release()).isTrue();
+
+        // Compressed on request even without a threshold
+        server.writeOutbound(decodedRequest);
+        ByteBuf responseFrame = server.readOutbound();
+        assertEquals(CodecHelper.FLAG_COMPRESSED, responseFrame.getByte(1));
+        client.writeInbound(responseFrame);
+        assertThat(((RemotingCommand) client.readInbound()).payload()).isEqualTo(request.payload());
+    }
+
+    @Test
+    public void decode_PayloadObject_Success() {
+        RemotingClientConfig clientConfig = new RemotingClientConfig();
+        clientConfig.setProtocolVersion(CodecHelper.PROTOCOL_VERSION_2);
+        clientConfig.setCompressionThreshold(1024);
+        clientConfig.setChecksumEnable(true);
+
+        HashMap<String, String> small = new HashMap<>();
+        small.put("key", "value");
+        HashMap<String, String> large = new HashMap<>();
+        for (int i = 0; i < 256; i++) {
+            large.put("key" + i, "remoting");
+        }
+
+        for (SerializableType serializableType : SerializableType.values()) {
+            for (HashMap<String, String> payloadObject : Arrays.asList(small, large)) {
+                for (Encoder encoder : Arrays.asList(new Encoder(), new Encoder(clientConfig))) {
+                    EmbeddedChannel client = new EmbeddedChannel(encoder);
+                    EmbeddedChannel server = new EmbeddedChannel(new Decoder(true));
+
+                    RemotingCommand request = new RemotingCommandFactoryImpl().createRequest();
+                    request.cmdCode((short) 1);
+                    request.serializableType(serializableType);
+                    request.payloadObject(payloadObject);
+
+                    client.writeOutbound(request);
+                    server.writeInbound((ByteBuf) client.readOutbound());
+                    RemotingCommandImpl decodedRequest = server.readInbound();
+                    assertThat(SerializableHelper.deserialize(serializableType, decodedRequest.payloadBuffer(), HashMap.class))
+                            .isEqualTo(payloadObject);
+                    assertThat(SerializableHelper.deserialize(serializableType, decodedRequest.payload(), HashMap.class))
+                            .isEqualTo(payloadObject);
+                    decodedRequest.release();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void decode_Checksum_EncoderFollowsPeer() {
+        RemotingClientConfig clientConfig = new RemotingClientConfig();
+        clientConfig.setProtocolVersion(CodecHelper.PROTOCOL_VERSION_2);
+        clientConfig.setChecksumEnable(true);
+        EmbeddedChannel client = new EmbeddedChannel(new Encoder(clientConfig), new Decoder());
+        EmbeddedChannel server = new EmbeddedChannel(new Encoder(new RemotingServerConfig()), new Decoder());
+
+        for (int payloadLen : new int[]{16, 4096}) {
+            RemotingCommand request = randomRemotingCommand();
+            request.payload(RandomStringUtils.random(payloadLen).getBytes());
+            client.writeOutbound(request);
+            ByteBuf requestFrame = client.readOutbound();
+            assertEquals(CodecHelper.FLAG_CHECKSUM, requestFrame.getByte(1));
+
+            server.writeInbound(requestFrame);
+            RemotingCommand decodedRequest = server.readInbound();
+            assertEquals(request, decodedRequest);
+
+            server.writeOutbound(decodedRequest);
+            ByteBuf responseFrame = server.readOutbound();
+            assertEquals(CodecHelper.FLAG_CHECKSUM, responseFrame.getByte(1));
+            client.writeInbound(responseFrame);
+            assertEquals(request, client.readInbound());
+        }
+    }
+
+    @Test
+    public void decode_ChecksumMismatch_ChannelClosed() {
+        RemotingClientConfig clientConfig = new RemotingClientConfig();
+        clientConfig.setProtocolVersion(CodecHelper.PROTOCOL_VERSION_2);
+        clientConfig.setChecksumEnable(true);
+        EmbeddedChannel client = new EmbeddedChannel(new Encoder(clientConfig));
+        EmbeddedChannel server = new EmbeddedChannel(new Decoder());
+
+        client.writeOutbound(randomRemotingCommand());
+        ByteBuf frame = client.readOutbound();
+        // Corrupt the last payload byte
+        int index = frame.writerIndex() - CodecHelper.CHECKSUM_LEN - 1;
+        frame.setByte(index, frame.getByte(index) ^ 1);
+
+        server.writeInbound(frame);
+        assertThat((Object) server.readInbound()).isNull();
+        assertThat(server.isActive()).isFalse();
+    }
+
+    @Test
+    public void decode_OnewayBatch_ExpandedInOrder() {
+        EmbeddedChannel client = new EmbeddedChannel(new Encoder(), new OnewayBatchHandler(200000, 1024 * 1024));
+        EmbeddedChannel server = new EmbeddedChannel(new Decoder());
+        client.freezeTime();
+
+        List<RemotingCommand> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            RemotingCommand request = randomRemotingCommand();
+            request.trafficType(TrafficType.REQUEST_ONEWAY);
+            requests.add(request);
+            client.writeOutbound(request);
+        }
+        assertThat((Object) client.readOutbound()).isNull();
+
+        // A request of another type sends the pending batch first
+        RemotingCommand syncRequest = randomRemotingCommand();
+        requests.add(syncRequest);
+        client.writeOutbound(syncRequest);
+
+        // The delay sends a batch on its own
+        RemotingCommand delayed = randomRemotingCommand();
+        delayed.trafficType(TrafficType.REQUEST_ONEWAY);
+        requests.add(delayed);
+        client.writeOutbound(delayed);
+        client.advanceTimeBy(199, TimeUnit.MILLISECONDS);
+        client.runScheduledPendingTasks();
+        assertThat(client.outboundMessages()).hasSize(2);
+        client.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        client.runScheduledPendingTasks();
+        assertThat(client.outboundMessages()).hasSize(3);
+
+        ByteBuf batchFrame = client.readOutbound();
+        server.writeInbound(batchFrame, client.readOutbound(), client.readOutbound());
+        for (RemotingCommand request : requests) {
+            assertEquals(request, server.readInbound());
+        }
+        assertThat((Object) server.readInbound()).isNull();
+    }
+
+    @Test
+    public void decode_OnewayBatchOfLargeProperties_SplitAtMaxBytes() {
+        int maxBytes = 16 * 1024;
+        EmbeddedChannel client = new EmbeddedChannel(new Encoder(), new OnewayBatchHandler(200000, maxBytes));
+        EmbeddedChannel server = new EmbeddedChannel(new Decoder());
+
+        List<RemotingCommand> requests = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            RemotingCommand request = new RemotingCommandFactoryImpl().createRequest();
+            request.trafficType(TrafficType.REQUEST_ONEWAY);
+            request.payload(new byte[16]);
+            // Mostly properties, about 10KB per frame
+            for (int j = 0; j < 5; j++) {
+                request.property("key" + j, RandomStringUtils.randomAlphanumeric(2048));
+            }
+            requests.add(request);
+            client.writeOutbound(request);
+        }
+        client.flushOutbound();
+        client.close();
+
+        for (Object frame : client.outboundMessages()) {
+            assertThat(((ByteBuf) frame).readableBytes()).isLessThanOrEqualTo(maxBytes + CodecHelper.MIN_PROTOCOL_LEN);
+        }
+        for (Object frame : client.outboundMessages()) {
+            server.writeInbound(frame);
+        }
+        for (RemotingCommand request : requests) {
+            assertEquals(request, server.readInbound());
+        }
+        assertThat((Object) server.readInbound()).isNull();
+    }
+
+    @Test
+    public void decode_FrameInManyReads_Success() {
+        RemotingClientConfig v2Config = new RemotingClientConfig();
+        v2Config.setProtocolVersion(CodecHelper.PROTOCOL_VERSION_2);
+        for (Encoder encoder : new Encoder[]{new Encoder(), new Encoder(v2Config)}) {
+            EmbeddedChannel client = new EmbeddedChannel(encoder);
+            EmbeddedChannel server = new EmbeddedChannel(new Decoder());
+
+            RemotingCommand request = randomRemotingCommand();
+            request.payload(new byte[1024 * 1024]);
+            client.writeOutbound(request);
+            ByteBuf frame = client.readOutbound();
+
+            // The first read stops inside the header, the others inside the payload
+            server.writeInbound(frame.readRetainedSlice(3));
+            while (frame.readableBytes() > 4096) {
+                server.writeInbound(frame.readRetainedSlice(4096));
+                assertThat((Object) server.readInbound()).isNull();
+            }
+            server.writeInbound(frame);
+            assertEquals(request, server.readInbound());
+            assertThat(server.isActive()).isTrue();
+        }
+    }
+
+    @Test
+    public void decode_LargeFrameInManyReads_CumulationReallocatedOnceReserved() {
+        final ByteBuf[] cumulation = new ByteBuf[1];
+        final int[] capacity = new int[1];
+        final int[] reallocations = new int[1];
+        final int[] reallocationsAfterQuarter = new int[1];
+        EmbeddedChannel client = new EmbeddedChannel(new Encoder());
+        EmbeddedChannel server = new EmbeddedChannel(new Decoder() {
+            @Override
+            protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+                track(in);
+                super.decode(ctx, in, out);
+                track(in);
+            }
+
+            private void track(ByteBuf in) {
+                if (cumulation[0] != null && (in != cumulation[0] || in.capacity() != capacity[0])) {
+                    reallocations[0]++;
+                    if (in.readableBytes() >= 4 * 1024 * 1024) {
+                        reallocationsAfterQuarter[0]++;
+                    }
+                }
+                cumulation[0] = in;
+                capacity[0] = in.capacity();
+            }
+        });
+
+        RemotingCommand request = randomRemotingCommand();
+        request.payload(new byte[16 * 1024 * 1024 - 64 * 1024]);
+        client.writeOutbound(request);
+        ByteBuf frame = client.readOutbound();
+        while (frame.readableBytes() > 64 * 1024) {
+            server.writeInbound(frame.readRetainedSlice(64 * 1024));
+        }
+        server.writeInbound(frame);
+        assertEquals(request, server.readInbound());
+
+        // The cumulator doubles the buffer up to a quarter of the frame, then the rest is reserved once
+        assertThat(reallocationsAfterQuarter[0]).isEqualTo(1);
+        assertThat(reallocations[0]).isLessThanOrEqualTo(7);
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    public void decode_HugeDeclaredLength_CumulationBounded() {
+        final ByteBuf[] cumulation = new ByteBuf[1];
+        EmbeddedChannel channel = new EmbeddedChannel(new Decoder() {
+            @Override
+            protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+                super.decode(ctx, in, out);
+                cumulation[0] = internalBuffer();
+            }
+        });
+
+        // A bare header declaring the largest frame, the payload never arrives
+        ByteBuf buf = ByteBufAllocator.DEFAULT.heapBuffer();
+        buf.writeByte(CodecHelper.PROTOCOL_MAGIC);
+        buf.writeInt(CodecHelper.PACKET_MAX_LEN);
+        buf.writeBytes(new byte[CodecHelper.MIN_PROTOCOL_LEN - 5]);
+        channel.writeInbound(buf);
+        for (int i = 0; i < 4; i++) {
+            channel.writeInbound(ByteBufAllocator.DEFAULT.heapBuffer().writeBytes(new byte[1024]));
+        }
+
+        assertThat((Object) channel.readInbound()).isNull();
+        assertThat(channel.isActive()).isTrue();
+        assertThat(cumulation[0].capacity()).isLessThan(64 * 1024);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void decode_ProtocolV2WrongLength_ChannelClosed() {
+        EmbeddedChannel channel = new EmbeddedChannel(new Decoder());
+
+        ByteBuf buf = ByteBufAllocator.DEFAULT.heapBuffer();
+        buf.writeByte(CodecHelper.PROTOCOL_MAGIC_V2);
+        buf.writeByte(0);
+        // Frame length two bytes longer than the command
+        buf.writeByte(12);
+        buf.writeBytes(new byte[]{1, 0, 1, 1, 0, 0, 1, 0, 0, 0, 0, 0});
+
+        channel.writeInbound(buf);
+        assertThat(channel.isActive()).isFalse();
+    }
+
+    @Test
+    public void decode_PayloadZeroCopy_Success() {
+        EmbeddedChannel channel = new EmbeddedChannel(new Encoder(), new Decoder(true));
+
+        RemotingCommand request = randomRemotingCommand();
+        channel.writeOutbound(request);
+        channel.flushOutbound();
+
+        ByteBuf buffer = channel.readOutbound();
+        channel.writeInbound(buffer);
+        channel.flushInbound();
+
+        RemotingCommandImpl decodedRequest = channel.readInbound();
+        ByteBuf payloadBuffer = decodedRequest.payloadBuffer();
+        assertThat(payloadBuffer).isNotNull();
+        assertThat(payloadBuffer.refCnt()).isEqualTo(1);
+
+        assertEquals(request, decodedRequest);
+        assertEquals(request.hashCode(), decodedRequest.hashCode());
+        assertThat(decodedRequest.payload()).isEqualTo(request.payload());
+        assertThat(decodedRequest.release()).isTrue();
+        assertThat(payloadBuffer.refCnt()).isEqualTo(0);
+        assertThat(decodedRequest.payloadBuffer()).isNull();
+        assertThat(decodedRequest.payload()).isEqualTo(request.payload());
+    }
+
+    @Test
+    public void decode_PayloadZeroCopy_EqualsWithoutCopy() {
+        EmbeddedChannel channel = new EmbeddedChannel(new Encoder(), new Decoder(true));
+
+        RemotingCommand request = randomRemotingCommand();
+        channel.writeOutbound(request);
+        channel.writeInbound((ByteBuf) channel.readOutbound());
+
+        RemotingCommandImpl decodedRequest = channel.readInbound();
+        assertEquals(request, decodedRequest);
+        assertEquals(decodedRequest, request);
+        assertEquals(request.hashCode(), decodedRequest.hashCode());
+
+        // equals and hashCode read the slice in place, so nothing was copied out before the release
+        assertThat(decodedRequest.release()).isTrue();
+        assertThat(decodedRequest.payload()).isNull();
+        assertThat(decodedRequest).isNotEqualTo(request);
+    }
+
     @Test
     public void decode_WrongMagicCode_ChannelClosed() {
         // Magic Code doesn't match
@@ -91,4 +578,11 @@ public class DecoderTest extends BaseTest {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * @return the PropertiesSize field of a v1 frame, negative for compact properties
+     */
+    private static short propertiesSize(ByteBuf frame) {
+        int remarkLen = frame.getShort(frame.readerIndex() + 18);
+        return frame.getShort(frame.readerIndex() + 20 + remarkLen);
+    }
+}
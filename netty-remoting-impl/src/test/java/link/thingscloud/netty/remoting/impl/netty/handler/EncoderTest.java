@@ -18,6 +18,7 @@
 package link.thingscloud.netty.remoting.impl.netty.handler;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.embedded.EmbeddedChannel;
 import link.thingscloud.netty.remoting.BaseTest;
 import link.thingscloud.netty.remoting.api.command.RemotingCommand;
@@ -57,6 +58,39 @@ public class EncoderTest extends BaseTest {
         assertEquals(request, decodedRequest);
     }
 
+    @Test
+    public void encode_ExactSizeBuffer() {
+        EmbeddedChannel channel = new EmbeddedChannel(new Encoder());
+
+        RemotingCommand request = randomRemotingCommand();
+        channel.writeOutbound(request);
+
+        ByteBuf buffer = channel.readOutbound();
+        assertEquals(buffer.readableBytes(), buffer.capacity());
+        buffer.release();
+    }
+
+    @Test
+    public void encode_LargePayload_SingleDirectBuffer() {
+        EmbeddedChannel channel = new EmbeddedChannel(new Encoder());
+
+        RemotingCommand request = randomRemotingCommand();
+        request.payload(RandomStringUtils.randomAlphabetic(1024 * 1024).getBytes());
+        channel.writeOutbound(request);
+
+        ByteBuf buffer = channel.readOutbound();
+        assertThat(buffer).isNotInstanceOf(CompositeByteBuf.class);
+        assertThat(buffer.isDirect()).isTrue();
+        assertEquals(buffer.readableBytes(), buffer.capacity());
+
+        assertEquals(PROTOCOL_MAGIC, buffer.readByte());
+        assertEquals(buffer.readableBytes() + 1, buffer.readInt());
+
+        RemotingCommand decodedRequest = CodecHelper.decode(new NettyRemotingBuffer(buffer));
+        assertEquals(request, decodedRequest);
+        buffer.release();
+    }
+
     @Test
     public void encode_LenOverLimit_ChannelClosed() {
         EmbeddedChannel channel = new EmbeddedChannel(new Encoder());